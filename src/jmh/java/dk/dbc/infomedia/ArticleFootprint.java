@@ -0,0 +1,36 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+
+/**
+ * Reports the retained heap of a day's worth of articles bound as {@link Article} and as {@link CompactArticle}.
+ * Settings are system properties: articles (50000) and bodyWords (0 keeps the recorded body texts).
+ * <p>
+ * Run with: mvn -P jmh -DskipTests test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=dk.dbc.infomedia.ArticleFootprint
+ */
+public class ArticleFootprint {
+    public static void main(String[] args) throws IOException {
+        final int articles = Integer.getInteger("articles", 50000);
+        final int bodyWords = Integer.getInteger("bodyWords", 0);
+        final byte[] json = SyntheticCorpus.articleList(articles, bodyWords);
+
+        report("Article", ArticleStreamReader.OBJECT_MAPPER, json, articles);
+        report("CompactArticle", ArticleStreamReader.COMPACT_OBJECT_MAPPER, json, articles);
+    }
+
+    private static void report(String name, ObjectMapper objectMapper, byte[] json, int articles) throws IOException {
+        final ArticleList articleList = objectMapper.readValue(json, ArticleList.class);
+        final GraphLayout layout = GraphLayout.parseInstance(articleList.getArticles());
+        System.out.printf("%-15s %,d articles retain %,d bytes in %,d objects, %,d bytes per article%n",
+                name, articles, layout.totalSize(), layout.totalCount(), layout.totalSize() / articles);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk operations against the simulator with many concurrent blocking requests, run on the default
+ * platform thread pool, on a platform thread pool with a thread per concurrent request and on virtual
+ * threads. Virtual threads need Java 21, on older JDKs "virtual" measures the default pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExecutionModeBenchmark {
+    private static final Instant PUBLISH_DATE = Instant.parse("2019-01-13T00:00:00Z");
+    private static final Duration SPAN = Duration.ofDays(1);
+    private static final int BATCH_SIZE = 10;
+
+    @Param({"default", "platform", "virtual"})
+    public String executionMode;
+
+    @Param({"64", "256"})
+    public int concurrency;
+
+    private InfomediaSimulator simulator;
+    private InfomediaConnector connector;
+    private ExecutorService platformExecutor;
+    private Set<String> sources;
+    private Set<String> articleIds;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InfomediaConnectorException {
+        final String[] sourceCodes = {"pol", "ber", "jyl", "inf"};
+        sources = new LinkedHashSet<>(Arrays.asList(sourceCodes));
+        simulator = new InfomediaSimulator()
+                .withCorpus(concurrency * BATCH_SIZE, PUBLISH_DATE, SPAN, sourceCodes)
+                .withLatency(Duration.ofMillis(20), Duration.ofMillis(10))
+                .start();
+        final InfomediaTransportConfig transportConfig = new InfomediaTransportConfig();
+        transportConfig.setMaxConnections(concurrency);
+        transportConfig.setMaxConnectionsPerRoute(concurrency);
+        connector = InfomediaConnectorFactory.create(simulator.getBaseUrl(), InfomediaConnector.TimingLogLevel.TRACE,
+                "username", "password", transportConfig);
+        connector.setPageSize(BATCH_SIZE);
+        connector.setPagingConcurrency(concurrency);
+        connector.setFetchBatchSize(BATCH_SIZE);
+        connector.setFetchConcurrency(concurrency);
+        switch (executionMode) {
+            case "platform":
+                platformExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+                    final Thread thread = new Thread(runnable, "benchmark-platform");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                connector.setExecutor(platformExecutor);
+                break;
+            case "virtual":
+                connector.setVirtualThreads(true);
+                break;
+            default:
+                break;
+        }
+        articleIds = connector.searchArticleIdsByPublishDate(PUBLISH_DATE, SPAN.minusSeconds(1), sources);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connector.close();
+        if (platformExecutor != null) {
+            platformExecutor.shutdown();
+        }
+        simulator.close();
+    }
+
+    /**
+     * One fetch of {@code concurrency} batches, all requested at once
+     */
+    @Benchmark
+    public int fetchBatches() throws InfomediaConnectorException {
+        return connector.getArticles(articleIds).getArticles().size();
+    }
+
+    /**
+     * One search of {@code concurrency} pages, the remaining pages requested at once
+     */
+    @Benchmark
+    public int searchPages() throws InfomediaConnectorException {
+        return connector.searchArticleIdsByPublishDate(PUBLISH_DATE, SPAN.minusSeconds(1), sources).size();
+    }
+}
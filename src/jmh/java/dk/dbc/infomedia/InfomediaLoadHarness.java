@@ -0,0 +1,157 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Harvests a simulated Infomedia corpus with {@link InfomediaConnector} and reports throughput
+ * and request latency percentiles. All settings are system properties:
+ * <ul>
+ *     <li>articles, sources - corpus size and number of sources (20000, 10)</li>
+ *     <li>latencyMillis, spreadMillis - minimum latency and mean additional latency per request (20, 30)</li>
+ *     <li>randomOrdering - whether search results are ordered at random (true)</li>
+ *     <li>burstProbability, burstLength - 502 failure bursts (0.01, 3)</li>
+ *     <li>tokenSeconds - bearer token lifetime (30)</li>
+ *     <li>pageSize, pagingConcurrency, fetchBatchSize, fetchConcurrency - connector settings (300, 4, 100, 4)</li>
+ *     <li>callerIds - when positive, articles are requested in calls of this many ids through an
+ *     {@link ArticleFetchBatcher} instead of in one call (0)</li>
+ *     <li>batchWindowMillis, maxBatchSize - batcher settings (10, 1000)</li>
+ *     <li>virtualThreads - run concurrent requests on virtual threads, Java 21 or later (false)</li>
+ *     <li>rounds - number of harvests, the first of which is reported as warm-up (4)</li>
+ * </ul>
+ * Run with: mvn -P jmh -DskipTests test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=dk.dbc.infomedia.InfomediaLoadHarness
+ */
+public class InfomediaLoadHarness {
+    private static final Instant PUBLISH_DATE = Instant.parse("2019-01-13T00:00:00Z");
+    private static final Duration SPAN = Duration.ofDays(1);
+
+    public static void main(String[] args) throws Exception {
+        final int articles = Integer.getInteger("articles", 20000);
+        final int sourceCount = Integer.getInteger("sources", 10);
+        final String[] sources = new String[sourceCount];
+        for (int i = 0; i < sourceCount; i++) {
+            sources[i] = "src" + i;
+        }
+
+        try (InfomediaSimulator simulator = new InfomediaSimulator()
+                .withCorpus(articles, PUBLISH_DATE, SPAN, sources)
+                .withRandomOrdering(Boolean.parseBoolean(System.getProperty("randomOrdering", "true")))
+                .withLatency(Duration.ofMillis(Long.getLong("latencyMillis", 20)),
+                        Duration.ofMillis(Long.getLong("spreadMillis", 30)))
+                .withFailureBursts(Double.parseDouble(System.getProperty("burstProbability", "0.01")),
+                        Integer.getInteger("burstLength", 3))
+                .withTokenLifetime(Duration.ofSeconds(Long.getLong("tokenSeconds", 30)))
+                .start()) {
+            final RecordingMetrics metrics = new RecordingMetrics();
+            final InfomediaConnector connector = InfomediaConnectorFactory.create(simulator.getBaseUrl(),
+                    InfomediaConnector.TimingLogLevel.TRACE, "username", "password",
+                    new ExponentialBackoffRetryStrategy().withBaseDelay(Duration.ofMillis(50)));
+            connector.setPageSize(Integer.getInteger("pageSize", 300));
+            connector.setPagingConcurrency(Integer.getInteger("pagingConcurrency", 4));
+            connector.setFetchBatchSize(Integer.getInteger("fetchBatchSize", 100));
+            connector.setFetchConcurrency(Integer.getInteger("fetchConcurrency", 4));
+            connector.setVirtualThreads(Boolean.getBoolean("virtualThreads"));
+            connector.setMetrics(metrics);
+
+            final int callerIds = Integer.getInteger("callerIds", 0);
+            final ArticleFetchBatcher batcher = callerIds > 0
+                    ? new ArticleFetchBatcher(connector, Duration.ofMillis(Long.getLong("batchWindowMillis", 10)),
+                            Integer.getInteger("maxBatchSize", 1000))
+                    : null;
+
+            final Set<String> sourceSet = new LinkedHashSet<>(Arrays.asList(sources));
+            final int rounds = Integer.getInteger("rounds", 4);
+            for (int round = 0; round < rounds; round++) {
+                metrics.reset();
+                final long start = System.nanoTime();
+                final Set<String> articleIds = connector.searchAllArticleIdsByPublishDate(PUBLISH_DATE,
+                        SPAN.minusSeconds(1), sourceSet);
+                final long searched = System.nanoTime();
+                final int fetched = batcher == null
+                        ? connector.getArticles(articleIds).getArticles().size()
+                        : fetchInCalls(batcher, articleIds, callerIds);
+                final long end = System.nanoTime();
+
+                System.out.printf("%s %d: %d/%d ids in %d ms, %d articles in %d ms, %.0f articles/sec%n",
+                        round == 0 ? "warm-up" : "round", round, articleIds.size(), simulator.getCorpusSize(),
+                        (searched - start) / 1_000_000, fetched, (end - searched) / 1_000_000,
+                        fetched / ((end - start) / 1e9));
+                metrics.report();
+            }
+            System.out.printf("simulator: %d failed and %d rejected requests, %d tokens issued%n",
+                    simulator.getFailedRequests(), simulator.getRejectedRequests(),
+                    simulator.getRequestCount(InfomediaConnector.URL_OAUTH_TOKEN));
+            if (batcher != null) {
+                batcher.close();
+            }
+            connector.close();
+        }
+    }
+
+    private static int fetchInCalls(ArticleFetchBatcher batcher, Set<String> articleIds, int callerIds)
+            throws Exception {
+        final List<String> ids = new ArrayList<>(articleIds);
+        final List<CompletableFuture<ArticleList>> calls = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += callerIds) {
+            calls.add(batcher.getArticles(new LinkedHashSet<>(ids.subList(i, Math.min(i + callerIds, ids.size())))));
+        }
+        int fetched = 0;
+        for (CompletableFuture<ArticleList> call : calls) {
+            fetched += call.get().getArticles().size();
+        }
+        return fetched;
+    }
+
+    private static class RecordingMetrics implements InfomediaMetrics {
+        private final Map<String, ConcurrentLinkedQueue<Long>> latencies = new ConcurrentHashMap<>();
+        private final Map<String, AtomicLong> retries = new ConcurrentHashMap<>();
+
+        @Override
+        public void requestCompleted(String path, Duration duration, boolean success) {
+            latencies.computeIfAbsent(path, key -> new ConcurrentLinkedQueue<>()).add(duration.toNanos());
+        }
+
+        @Override
+        public void retried(String path, String cause) {
+            retries.computeIfAbsent(path + " " + cause, key -> new AtomicLong()).incrementAndGet();
+        }
+
+        void reset() {
+            latencies.clear();
+            retries.clear();
+        }
+
+        void report() {
+            latencies.forEach((path, samples) -> {
+                final List<Long> sorted = new ArrayList<>(samples);
+                Collections.sort(sorted);
+                System.out.printf("  %-24s %6d requests  p50 %7.1f ms  p99 %7.1f ms  max %7.1f ms%n", path,
+                        sorted.size(), percentile(sorted, 0.50), percentile(sorted, 0.99),
+                        sorted.get(sorted.size() - 1) / 1e6);
+            });
+            retries.forEach((cause, count) -> System.out.printf("  retried %s: %d%n", cause, count.get()));
+        }
+
+        private static double percentile(List<Long> sorted, double fraction) {
+            final int index = (int) Math.ceil(fraction * sorted.size()) - 1;
+            return sorted.get(Math.max(index, 0)) / 1e6;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing fetch and search request bodies and building search queries.
+ * Run with "-prof gc" for allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBuildingBenchmark {
+    @Param({"300", "3000"})
+    public int articles;
+
+    @Param({"1", "40"})
+    public int sources;
+
+    private final Instant publishDate = Instant.parse("2019-01-13T00:00:00Z");
+    private final Duration publishDuration = Duration.ofDays(1).minusSeconds(1);
+    private List<String> articleIds;
+    private Set<String> sourceCodes;
+    private SearchRequestTemplate searchRequestTemplate;
+
+    @Setup
+    public void setup() {
+        articleIds = SyntheticCorpus.articleIds(articles);
+        sourceCodes = new LinkedHashSet<>();
+        for (int i = 0; i < sources; i++) {
+            sourceCodes.add("src" + i);
+        }
+        searchRequestTemplate = new SearchRequestTemplate(publishDate, publishDuration, sourceCodes, 300);
+    }
+
+    @Benchmark
+    public void fetchBody(Blackhole blackhole) throws IOException {
+        InfomediaConnector.fetchBody(articleIds).write(new DiscardingOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public void searchPageBody(Blackhole blackhole) throws IOException {
+        searchRequestTemplate.page(articles).write(new DiscardingOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public String iqlQuery() {
+        return InfomediaConnector.iqlQuery(publishDate, publishDuration, sourceCodes);
+    }
+
+    /**
+     * Request output stand-in, consuming written bytes so the writes are not optimized away
+     */
+    private static class DiscardingOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        private DiscardingOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(b);
+            blackhole.consume(len);
+        }
+    }
+}
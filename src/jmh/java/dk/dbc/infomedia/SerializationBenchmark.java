@@ -0,0 +1,82 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of binding search and fetch responses. Run with "-prof gc" for allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"300", "3000"})
+    public int articles;
+
+    @Param({"0", "800"})
+    public int bodyWords;
+
+    private byte[] searchResultJson;
+    private byte[] articleListJson;
+    private ArticleSearchResult searchResult;
+    private ObjectMapper projectedMapper;
+
+    @Setup
+    public void setup() throws IOException {
+        searchResultJson = SyntheticCorpus.searchResult(articles, bodyWords);
+        articleListJson = SyntheticCorpus.articleList(articles, bodyWords);
+        searchResult = ArticleStreamReader.OBJECT_MAPPER.readValue(searchResultJson, ArticleSearchResult.class);
+        projectedMapper = ProjectingArticleDeserializer.objectMapper(
+                EnumSet.of(ArticleField.HEADING, ArticleField.SOURCE, ArticleField.PUBLISH_DATE), false);
+    }
+
+    @Benchmark
+    public ArticleSearchResult deserializeSearchResult() throws IOException {
+        return ArticleStreamReader.OBJECT_MAPPER.readValue(searchResultJson, ArticleSearchResult.class);
+    }
+
+    @Benchmark
+    public ArticleList deserializeArticleList() throws IOException {
+        return ArticleStreamReader.OBJECT_MAPPER.readValue(articleListJson, ArticleList.class);
+    }
+
+    @Benchmark
+    public ArticleList deserializeProjectedArticleList() throws IOException {
+        return projectedMapper.readValue(articleListJson, ArticleList.class);
+    }
+
+    @Benchmark
+    public ArticleUsage streamArticleList(Blackhole blackhole) throws IOException {
+        return ArticleStreamReader.read(new ByteArrayInputStream(articleListJson), blackhole::consume);
+    }
+
+    @Benchmark
+    public List<String> getArticleIds() {
+        return searchResult.getArticleIds();
+    }
+}
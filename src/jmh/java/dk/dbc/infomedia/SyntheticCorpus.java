@@ -0,0 +1,104 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds Infomedia response payloads of arbitrary size from the recorded WireMock payloads
+ * in src/test/resources/__files, by repeating the recorded articles under new article ids.
+ */
+final class SyntheticCorpus {
+    static final String SEARCH_PAYLOAD = "/__files/body-api-v1-article-search-KQIrd.json";
+    static final String FETCH_PAYLOAD = "/__files/body-api-v1-article-fetch-UMIvb.json";
+
+    private static final String[] WORDS = {"infomedia", "artikel", "avis", "kilde", "sektion", "forfatter", "side"};
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * @param articles  number of articles in the payload
+     * @param bodyWords number of words in each body text, 0 to keep the recorded body texts
+     * @return search response JSON holding the given number of articles
+     */
+    static byte[] searchResult(int articles, int bodyWords) {
+        return scale(SEARCH_PAYLOAD, articles, bodyWords);
+    }
+
+    /**
+     * @param articles  number of articles in the payload
+     * @param bodyWords number of words in each body text, 0 to keep the recorded body texts
+     * @return fetch response JSON holding the given number of articles
+     */
+    static byte[] articleList(int articles, int bodyWords) {
+        return scale(FETCH_PAYLOAD, articles, bodyWords);
+    }
+
+    /**
+     * @param articles number of article ids
+     * @return article ids shaped like the recorded ones
+     */
+    static List<String> articleIds(int articles) {
+        final List<String> articleIds = new ArrayList<>(articles);
+        for (int i = 0; i < articles; i++) {
+            articleIds.add(articleId(i));
+        }
+        return articleIds;
+    }
+
+    private static byte[] scale(String resource, int articles, int bodyWords) {
+        try (InputStream inputStream = SyntheticCorpus.class.getResourceAsStream(resource)) {
+            if (inputStream == null) {
+                throw new IllegalStateException("Missing recorded payload " + resource);
+            }
+            final ObjectNode payload = (ObjectNode) ArticleStreamReader.OBJECT_MAPPER.readTree(inputStream);
+            final JsonNode recorded = payload.get("Articles");
+            final ArrayNode scaled = JsonNodeFactory.instance.arrayNode(articles);
+            for (int i = 0; i < articles; i++) {
+                final ObjectNode article = ((ObjectNode) recorded.get(i % recorded.size())).deepCopy();
+                article.put("ArticleId", articleId(i));
+                article.put("ArticleUrl", "https://mediaresearchapi.infomedia.dk/api/v1/article?id=" + articleId(i));
+                if (bodyWords > 0) {
+                    article.put("BodyText", bodyText(i, bodyWords));
+                    article.put("WordCount", bodyWords);
+                }
+                scaled.add(article);
+            }
+            payload.set("Articles", scaled);
+            if (payload.has("NumFound")) {
+                payload.put("NumFound", articles);
+            }
+            return ArticleStreamReader.OBJECT_MAPPER.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String articleId(int i) {
+        return String.format("e7%06x", i);
+    }
+
+    private static String bodyText(int seed, int words) {
+        final StringBuilder bodyText = new StringBuilder(words * 8);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                bodyText.append(' ');
+            }
+            bodyText.append(WORDS[(seed + i) % WORDS.length]);
+        }
+        return bodyText.toString();
+    }
+}
@@ -176,20 +176,20 @@ public class Article {
     @Override
     public String toString() {
         return "Article{" +
-                "heading='" + heading + '\'' +
-                ", subHeading='" + subHeading + '\'' +
-                ", bodyText='" + bodyText + '\'' +
-                ", pageIds=" + pageIds +
-                ", publishDate='" + publishDate + '\'' +
-                ", authors=" + authors +
-                ", captions=" + captions +
-                ", articleUrl='" + articleUrl + '\'' +
-                ", paragraph='" + paragraph + '\'' +
-                ", source='" + source + '\'' +
-                ", wordCount=" + wordCount +
-                ", articleId='" + articleId + '\'' +
-                ", section=" + section +
-                ", lead='" + lead + '\'' +
+                "heading='" + getHeading() + '\'' +
+                ", subHeading='" + getSubHeading() + '\'' +
+                ", bodyText='" + getBodyText() + '\'' +
+                ", pageIds=" + getPageIds() +
+                ", publishDate='" + getPublishDate() + '\'' +
+                ", authors=" + getAuthors() +
+                ", captions=" + getCaptions() +
+                ", articleUrl='" + getArticleUrl() + '\'' +
+                ", paragraph='" + getParagraph() + '\'' +
+                ", source='" + getSource() + '\'' +
+                ", wordCount=" + getWordCount() +
+                ", articleId='" + getArticleId() + '\'' +
+                ", section=" + getSection() +
+                ", lead='" + getLead() + '\'' +
                 '}';
     }
 }
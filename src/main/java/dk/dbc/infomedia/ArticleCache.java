@@ -0,0 +1,206 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded in-memory cache of articles keyed by article id.
+ * <p>
+ * Entries are evicted in least-recently-used order once the total weight of the cached
+ * articles exceeds the maximum weight, and are ignored once older than the optional time to live.
+ * Cached {@link Article} instances are shared between callers and must not be modified.
+ */
+public class ArticleCache {
+    private final long maxWeight;
+    private final ToLongFunction<Article> weigher;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private long weight;
+
+    /**
+     * Returns new cache holding at most maxArticles articles without expiry
+     *
+     * @param maxArticles maximum number of cached articles
+     */
+    public ArticleCache(int maxArticles) {
+        this(maxArticles, article -> 1, null);
+    }
+
+    /**
+     * Returns new cache bounded by weight
+     *
+     * @param maxWeight  maximum total weight of cached articles
+     * @param weigher    computes the weight of a single article, e.g. {@link #bodyTextWeight(Article)}
+     * @param timeToLive how long an article stays cached, null for no expiry
+     */
+    public ArticleCache(long maxWeight, ToLongFunction<Article> weigher, Duration timeToLive) {
+        this(maxWeight, weigher, timeToLive, System::nanoTime);
+    }
+
+    ArticleCache(long maxWeight, ToLongFunction<Article> weigher, Duration timeToLive, LongSupplier nanoClock) {
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be at least 1");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = InvariantUtil.checkNotNullOrThrow(weigher, "weigher");
+        this.timeToLiveNanos = timeToLive == null ? Long.MAX_VALUE : timeToLive.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Weighs an article by the length of its body text, the dominant part of its retained size
+     *
+     * @param article article to weigh
+     * @return body text length plus one
+     */
+    public static long bodyTextWeight(Article article) {
+        return article.getBodyText() == null ? 1 : article.getBodyText().length() + 1;
+    }
+
+    /**
+     * Looks up articles
+     *
+     * @param articleIds ids of articles to look up
+     * @return cached articles keyed by article id, missing and expired ids are absent
+     */
+    public Map<String, Article> getAll(Collection<String> articleIds) {
+        final Map<String, Article> result = new HashMap<>();
+        final long now = nanoClock.getAsLong();
+        lock.lock();
+        try {
+            for (String articleId : articleIds) {
+                final Entry entry = entries.get(articleId);
+                if (entry != null && now - entry.created >= timeToLiveNanos) {
+                    remove(articleId);
+                } else if (entry != null) {
+                    result.put(articleId, entry.article);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        hitCount.addAndGet(result.size());
+        missCount.addAndGet(articleIds.size() - result.size());
+        return result;
+    }
+
+    /**
+     * Caches articles, evicting least recently used articles when the maximum weight is exceeded
+     *
+     * @param articles articles to cache
+     */
+    public void putAll(Collection<Article> articles) {
+        final long now = nanoClock.getAsLong();
+        lock.lock();
+        try {
+            for (Article article : articles) {
+                if (article.getArticleId() == null) {
+                    continue;
+                }
+                remove(article.getArticleId());
+                final Entry entry = new Entry(article, weigher.applyAsLong(article), now);
+                entries.put(article.getArticleId(), entry);
+                weight += entry.weight;
+            }
+            final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictionCount.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String articleId) {
+        final Entry entry = entries.remove(articleId);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getWeight() {
+        lock.lock();
+        try {
+            return weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ArticleCache{" +
+                "size=" + size() +
+                ", weight=" + getWeight() +
+                ", maxWeight=" + maxWeight +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                '}';
+    }
+
+    private static class Entry {
+        private final Article article;
+        private final long weight;
+        private final long created;
+
+        private Entry(Article article, long weight, long created) {
+            this.article = article;
+            this.weight = weight;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Front-end gathering the article ids of many small {@link #getArticles(Set)} calls into few fetches.
+ * <p>
+ * Ids requested by concurrent callers are collected until the batch window has passed since the first
+ * of them arrived, or until the batch holds the maximum number of ids. The batch is then fetched by
+ * {@link InfomediaConnector#getArticlesAsync(Set)} and every caller's future completes with its own articles,
+ * in the order requested. The article usage reported for the batch is split between the callers by the
+ * articles returned for ids they were the first to request, so the usage of all callers adds up to that of
+ * the batch. Articles requested by several callers are the same instances for all of them and must not be
+ * modified.
+ */
+public class ArticleFetchBatcher implements Closeable {
+    private final InfomediaConnector connector;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Batch batch = new Batch();
+    private boolean closed;
+
+    /**
+     * Returns new batcher
+     *
+     * @param connector    connector fetching the batches
+     * @param window       how long ids are collected before the batch is fetched
+     * @param maxBatchSize number of ids fetching the batch without waiting for the window to pass
+     */
+    public ArticleFetchBatcher(InfomediaConnector connector, Duration window, int maxBatchSize) {
+        this.connector = InvariantUtil.checkNotNullOrThrow(connector, "connector");
+        InvariantUtil.checkNotNullOrThrow(window, "window");
+        if (window.isNegative()) {
+            throw new IllegalArgumentException("window must not be negative");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "infomedia-fetch-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds article ids to the current batch
+     *
+     * @param articleIds The list of article ids
+     * @return future completing with the articles found for the ids, or exceptionally with the
+     * {@link InfomediaConnectorException} failing the batch
+     */
+    public CompletableFuture<ArticleList> getArticles(Set<String> articleIds) {
+        if (articleIds == null || articleIds.isEmpty()) {
+            final ArticleList result = new ArticleList();
+            result.setArticles(new ArrayList<>());
+            return CompletableFuture.completedFuture(result);
+        }
+
+        final Request request = new Request(new ArrayList<>(articleIds));
+        Batch full = null;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("batcher is closed");
+            }
+            final Batch current = batch;
+            if (current.requests.isEmpty()) {
+                current.timeout = scheduler.schedule(() -> flush(current), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            current.requests.add(request);
+            current.articleIds.addAll(request.articleIds);
+            if (current.articleIds.size() >= maxBatchSize) {
+                full = takeBatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            fetch(full);
+        }
+        return request.future;
+    }
+
+    /**
+     * Fetches the ids collected so far and stops accepting new ids
+     */
+    @Override
+    public void close() {
+        final Batch last;
+        lock.lock();
+        try {
+            closed = true;
+            last = batch.requests.isEmpty() ? null : takeBatch();
+        } finally {
+            lock.unlock();
+        }
+        scheduler.shutdown();
+        if (last != null) {
+            fetch(last);
+        }
+    }
+
+    private void flush(Batch expired) {
+        lock.lock();
+        try {
+            if (batch != expired) {
+                return; // Already taken when it became full or the batcher was closed
+            }
+            takeBatch();
+        } finally {
+            lock.unlock();
+        }
+        fetch(expired);
+    }
+
+    private Batch takeBatch() {
+        final Batch taken = batch;
+        batch = new Batch();
+        if (taken.timeout != null) {
+            taken.timeout.cancel(false);
+        }
+        return taken;
+    }
+
+    private void fetch(Batch taken) {
+        final CompletableFuture<ArticleList> fetched;
+        try {
+            fetched = connector.getArticlesAsync(taken.articleIds);
+        } catch (RuntimeException e) {
+            fail(taken, e);
+            return;
+        }
+        fetched.whenComplete((articleList, failure) -> {
+            if (failure != null) {
+                fail(taken, failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure);
+            } else {
+                complete(taken, articleList);
+            }
+        });
+    }
+
+    private static void complete(Batch taken, ArticleList articleList) {
+        final Map<String, Article> articles = new HashMap<>();
+        for (Article article : articleList.getArticles()) {
+            articles.put(article.getArticleId(), article);
+        }
+        final List<List<Article>> results = new ArrayList<>(taken.requests.size());
+        final int[] charged = new int[taken.requests.size()];
+        final Set<String> chargedIds = new HashSet<>();
+        for (int i = 0; i < taken.requests.size(); i++) {
+            final Request request = taken.requests.get(i);
+            final List<Article> result = new ArrayList<>(request.articleIds.size());
+            for (String articleId : request.articleIds) {
+                final Article article = articles.get(articleId);
+                if (article != null) {
+                    result.add(article);
+                    if (chargedIds.add(articleId)) {
+                        charged[i]++;
+                    }
+                }
+            }
+            results.add(result);
+        }
+        final ArticleUsage[] usages = splitUsage(articleList.getArticleUsage(), charged);
+        for (int i = 0; i < taken.requests.size(); i++) {
+            final ArticleList reply = new ArticleList();
+            reply.setArticles(results.get(i));
+            reply.setArticleUsage(usages[i]);
+            taken.requests.get(i).future.complete(reply);
+        }
+    }
+
+    /**
+     * Splits the usage of a batch in proportion to the articles charged to each request, handing out
+     * the remainder by the largest fractions so that the parts add up to the batch usage
+     *
+     * @param usage   usage reported for the batch, or null
+     * @param charged number of articles charged to each request
+     * @return usage of each request, null entries when the batch reported none
+     */
+    static ArticleUsage[] splitUsage(ArticleUsage usage, int[] charged) {
+        final ArticleUsage[] usages = new ArticleUsage[charged.length];
+        if (usage == null) {
+            return usages;
+        }
+        long totalCharged = 0;
+        for (int count : charged) {
+            totalCharged += count;
+        }
+        final int total = usage.getArticleUsageCount();
+        final int[] counts = new int[charged.length];
+        if (totalCharged == 0) {
+            counts[0] = total; // Nothing returned, the usage is still reported once
+        } else {
+            final long[] remainders = new long[charged.length];
+            int assigned = 0;
+            for (int i = 0; i < charged.length; i++) {
+                final long share = (long) total * charged[i];
+                counts[i] = (int) (share / totalCharged);
+                remainders[i] = share % totalCharged;
+                assigned += counts[i];
+            }
+            for (; assigned < total; assigned++) {
+                int largest = 0;
+                for (int i = 1; i < charged.length; i++) {
+                    if (remainders[i] > remainders[largest]) {
+                        largest = i;
+                    }
+                }
+                counts[largest]++;
+                remainders[largest] = -1;
+            }
+        }
+        for (int i = 0; i < charged.length; i++) {
+            usages[i] = new ArticleUsage();
+            usages[i].setArticleUsageCount(counts[i]);
+            usages[i].setArticleUsageType(usage.getArticleUsageType());
+        }
+        return usages;
+    }
+
+    private static void fail(Batch taken, Throwable failure) {
+        for (Request request : taken.requests) {
+            request.future.completeExceptionally(failure);
+        }
+    }
+
+    private static class Batch {
+        private final List<Request> requests = new ArrayList<>();
+        private final Set<String> articleIds = new LinkedHashSet<>();
+        private ScheduledFuture<?> timeout;
+    }
+
+    private static class Request {
+        private final List<String> articleIds;
+        private final CompletableFuture<ArticleList> future = new CompletableFuture<>();
+
+        private Request(List<String> articleIds) {
+            this.articleIds = articleIds;
+        }
+    }
+}
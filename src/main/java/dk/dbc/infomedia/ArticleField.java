@@ -0,0 +1,55 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fields of an {@link Article}, used to select the fields bound by a projected fetch
+ * (see {@link InfomediaConnector#getProjectedArticles(java.util.Set, java.util.Set)}).
+ */
+public enum ArticleField {
+    ARTICLE_ID("ArticleId"),
+    ARTICLE_URL("ArticleUrl"),
+    HEADING("Heading"),
+    SUB_HEADING("SubHeading"),
+    LEAD("Lead"),
+    PARAGRAPH("Paragraph"),
+    BODY_TEXT("BodyText"),
+    CAPTIONS("Captions"),
+    AUTHORS("Authors"),
+    PAGE_IDS("PageIds"),
+    PUBLISH_DATE("PublishDate"),
+    SOURCE("Source"),
+    SECTION("Section"),
+    WORD_COUNT("WordCount");
+
+    private static final Map<String, ArticleField> BY_JSON_NAME = new HashMap<>();
+
+    static {
+        for (ArticleField field : values()) {
+            BY_JSON_NAME.put(field.jsonName, field);
+        }
+    }
+
+    private final String jsonName;
+
+    ArticleField(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    /**
+     * @return name of the field in Infomedia responses
+     */
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    static ArticleField forJsonName(String jsonName) {
+        return BY_JSON_NAME.get(jsonName);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Fetch request body writing the JSON array of article ids straight from the id collection
+ * to the request output, so no intermediate string of the whole body is built.
+ * The body can be written any number of times, e.g. once per retried attempt.
+ */
+class ArticleIdsBody implements StreamingOutput {
+    private final Collection<String> articleIds;
+
+    ArticleIdsBody(Collection<String> articleIds) {
+        this.articleIds = articleIds;
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        // Flushed rather than closed, the output stream belongs to the client
+        final JsonGenerator generator = ArticleStreamReader.OBJECT_MAPPER.getFactory().createGenerator(outputStream);
+        generator.writeStartArray();
+        for (String articleId : articleIds) {
+            generator.writeString(articleId);
+        }
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    @Override
+    public String toString() {
+        return articleIds.size() + " article ids";
+    }
+}
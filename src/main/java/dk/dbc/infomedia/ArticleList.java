@@ -25,6 +25,14 @@ public class ArticleList {
         this.articles = articles;
     }
 
+    public ArticleUsage getArticleUsage() {
+        return articleUsage;
+    }
+
+    public void setArticleUsage(ArticleUsage articleUsage) {
+        this.articleUsage = articleUsage;
+    }
+
     @Override
     public String toString() {
         return "ArticleList{" +
@@ -0,0 +1,281 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the articles found for sources in an interval, searching and fetching only as subscribers
+ * request articles (see {@link InfomediaConnector#publishArticlesByPublishDate(Instant, Duration, Set)}).
+ * <p>
+ * Every subscription searches the interval on its own. Like
+ * {@link InfomediaConnector#searchAllArticleIdsByPublishDate(Instant, Duration, Set)} intervals with more hits
+ * than fit in a page are split in two, but the halves are searched one at a time, earliest first, and only
+ * once the ids of the previous one have been delivered. Ids are fetched in batches of at most a page while
+ * the subscriber has outstanding demand, and articles beyond the demand are kept until more is requested.
+ * A subscription therefore holds no more than a page of ids and a batch of articles, however large the result.
+ * Signals other than {@code onSubscribe} are delivered on the connector executor, and not before
+ * {@code onSubscribe} has returned. Searches and fetches are started asynchronously, one at a time, and the subscription resumes when
+ * they complete, so no executor thread waits for a response.
+ */
+class ArticlePublisher implements Flow.Publisher<Article> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArticlePublisher.class);
+
+    private final InfomediaConnector connector;
+    private final Instant publishDate;
+    private final Duration publishDuration;
+    private final Set<String> sources;
+
+    ArticlePublisher(InfomediaConnector connector, Instant publishDate, Duration publishDuration, Set<String> sources) {
+        this.connector = connector;
+        this.publishDate = publishDate;
+        this.publishDuration = publishDuration;
+        this.sources = Collections.unmodifiableSet(new LinkedHashSet<>(sources));
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Article> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        final ArticleSubscription subscription = new ArticleSubscription(subscriber, connector.getExecutor());
+        subscriber.onSubscribe(subscription);
+        subscription.subscribed();
+    }
+
+    private class ArticleSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Article> subscriber;
+        private final Executor executor;
+        private final AtomicLong demand = new AtomicLong();
+        // Starts at one, holding back drains requested from onSubscribe until it has returned
+        private final AtomicInteger pendingDrains = new AtomicInteger(1);
+        private volatile boolean cancelled;
+        private volatile Throwable requestError;
+
+        // Only accessed by the drain loop
+        private final Deque<Window> windows = new ArrayDeque<>();
+        private final Deque<String> pendingIds = new ArrayDeque<>();
+        private final Deque<Article> ready = new ArrayDeque<>();
+        private CompletableFuture<Runnable> step;
+        private Set<String> previousWindowIds = Collections.emptySet();
+        private Set<String> windowIds = new HashSet<>();
+        private SearchRequestTemplate pagingTemplate;
+        private int nextStartIndex;
+        private long pagingNumFound;
+        private boolean done;
+
+        private ArticleSubscription(Flow.Subscriber<? super Article> subscriber, Executor executor) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            windows.push(new Window(publishDate, publishDuration));
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("request must be positive, was " + n);
+            } else {
+                demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void subscribed() {
+            if (pendingDrains.decrementAndGet() != 0) {
+                startDrain();
+            }
+        }
+
+        private void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                startDrain();
+            }
+        }
+
+        private void startDrain() {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                cancelled = true;
+                subscriber.onError(e);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    try {
+                        emit();
+                    } catch (CompletionException e) {
+                        terminate();
+                        subscriber.onError(e.getCause() != null ? e.getCause() : e);
+                    } catch (RuntimeException e) {
+                        terminate();
+                        subscriber.onError(e);
+                    }
+                }
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!cancelled && requestError == null && demand.get() > 0) {
+                if (step != null) {
+                    if (!step.isDone()) {
+                        return; // Drained again when the step completes
+                    }
+                    final CompletableFuture<Runnable> completed = step;
+                    step = null;
+                    completed.join().run();
+                } else if (!ready.isEmpty()) {
+                    final Article article = ready.poll();
+                    if (demand.get() != Long.MAX_VALUE) {
+                        demand.decrementAndGet();
+                    }
+                    subscriber.onNext(article);
+                } else if (!pendingIds.isEmpty()) {
+                    fetchBatch();
+                } else if (!searchNext()) {
+                    terminate();
+                    subscriber.onComplete();
+                    return;
+                }
+            }
+            if (requestError != null) {
+                terminate();
+                subscriber.onError(requestError);
+            } else if (cancelled) {
+                terminate();
+            }
+        }
+
+        private void terminate() {
+            done = true;
+            cancelled = true;
+            windows.clear();
+            pendingIds.clear();
+            ready.clear();
+            previousWindowIds = Collections.emptySet();
+            windowIds = Collections.emptySet();
+            pagingTemplate = null;
+            if (step != null) {
+                step.cancel(false);
+                step = null;
+            }
+        }
+
+        /**
+         * Starts a search or fetch, whose result is applied by the drain loop once it has completed
+         *
+         * @param started search or fetch, completing with the update of the subscription state
+         */
+        private void await(CompletableFuture<Runnable> started) {
+            step = started;
+            started.whenComplete((update, failure) -> schedule());
+        }
+
+        private void fetchBatch() {
+            final int batchSize = Math.min(connector.getFetchBatchSize(), connector.getPageSize());
+            final Set<String> batch = new LinkedHashSet<>();
+            while (batch.size() < batchSize && !pendingIds.isEmpty()) {
+                batch.add(pendingIds.poll());
+            }
+            await(connector.getArticlesAsync(batch)
+                    .thenApply(articleList -> () -> ready.addAll(articleList.getArticles())));
+        }
+
+        /**
+         * Searches the next page or interval
+         *
+         * @return false when the whole interval has been searched
+         */
+        private boolean searchNext() {
+            final int pageSize = connector.getPageSize();
+            if (pagingTemplate != null) {
+                final SearchRequestTemplate template = pagingTemplate;
+                final int startIndex = nextStartIndex;
+                nextStartIndex += pageSize;
+                if (nextStartIndex >= pagingNumFound) {
+                    pagingTemplate = null;
+                }
+                await(connector.searchPageAsync(template, startIndex).thenApply(reply -> () -> addIds(reply)));
+                return true;
+            }
+            final Window window = windows.poll();
+            if (window == null) {
+                return false;
+            }
+            final SearchRequestTemplate template = new SearchRequestTemplate(window.start, window.duration, sources,
+                    pageSize);
+            await(connector.searchPageAsync(template, 0)
+                    .thenApply(reply -> () -> searched(window, template, pageSize, reply)));
+            return true;
+        }
+
+        private void searched(Window window, SearchRequestTemplate template, int pageSize, ArticleSearchResult reply) {
+            if (reply.getNumFound() > pageSize) {
+                final Duration half = window.duration.dividedBy(2).truncatedTo(ChronoUnit.SECONDS);
+                if (!half.isZero()) {
+                    windows.push(new Window(window.start.plus(half), window.duration.minus(half)));
+                    windows.push(new Window(window.start, half));
+                    return;
+                }
+                LOGGER.warn("{} hits in {} second interval from {} exceeds page size {} - paging",
+                        reply.getNumFound(), window.duration.getSeconds(), window.start, pageSize);
+                pagingTemplate = template;
+                nextStartIndex = pageSize;
+                pagingNumFound = reply.getNumFound();
+            }
+            // Both ends of an interval are inclusive, so only articles of the interval searched just before
+            // can show up again
+            previousWindowIds = windowIds;
+            windowIds = new HashSet<>();
+            addIds(reply);
+        }
+
+        private void addIds(ArticleSearchResult reply) {
+            for (String articleId : reply.getArticleIds()) {
+                if (!previousWindowIds.contains(articleId) && windowIds.add(articleId)) {
+                    pendingIds.add(articleId);
+                }
+            }
+        }
+    }
+
+    private static class Window {
+        private final Instant start;
+        private final Duration duration;
+
+        private Window(Instant start, Duration duration) {
+            this.start = start;
+            this.duration = duration;
+        }
+    }
+}
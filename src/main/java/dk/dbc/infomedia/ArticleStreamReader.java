@@ -0,0 +1,85 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Incremental reader of article fetch responses.
+ * <p>
+ * Articles are bound one at a time while the "Articles" array is being parsed and handed to
+ * a consumer, so the complete response never has to be held in memory.
+ */
+class ArticleStreamReader {
+    static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    static final ObjectMapper COMPACT_OBJECT_MAPPER = OBJECT_MAPPER.copy()
+            .addMixIn(Article.class, CompactArticle.Binding.class);
+
+    private ArticleStreamReader() {
+    }
+
+    /**
+     * Reads an {@link ArticleList} shaped JSON document
+     *
+     * @param inputStream response entity stream, closed when done
+     * @param consumer    receives each article as soon as it has been parsed
+     * @return the article usage reported in the document, or null if absent
+     * @throws IOException on failure to read or parse the stream
+     */
+    static ArticleUsage read(InputStream inputStream, Consumer<Article> consumer) throws IOException {
+        return read(inputStream, OBJECT_MAPPER, consumer);
+    }
+
+    /**
+     * Reads an {@link ArticleList} shaped JSON document binding articles with the given mapper,
+     * e.g. {@link #COMPACT_OBJECT_MAPPER} for {@link CompactArticle} instances
+     */
+    static ArticleUsage read(InputStream inputStream, ObjectMapper objectMapper, Consumer<Article> consumer)
+            throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected article list object");
+            }
+            ArticleUsage articleUsage = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                if ("Articles".equals(fieldName) && token == JsonToken.START_ARRAY) {
+                    readArticles(parser, objectMapper, consumer);
+                } else if ("ArticleUsage".equals(fieldName) && token == JsonToken.START_OBJECT) {
+                    articleUsage = objectMapper.readValue(parser, ArticleUsage.class);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return articleUsage;
+        }
+    }
+
+    private static void readArticles(JsonParser parser, ObjectMapper objectMapper, Consumer<Article> consumer)
+            throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException(parser, "Unexpected end of article array");
+            }
+            if (token == JsonToken.START_OBJECT) {
+                consumer.accept(objectMapper.readValue(parser, Article.class));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor running at most a fixed number of tasks at a time on a delegate executor.
+ * <p>
+ * Tasks exceeding the limit are queued without blocking the submitting thread and
+ * are handed to the delegate as running tasks complete.
+ */
+class BoundedExecutor implements Executor {
+    private final Executor delegate;
+    private final int maxConcurrency;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger();
+
+    BoundedExecutor(Executor delegate, int maxConcurrency) {
+        this.delegate = InvariantUtil.checkNotNullOrThrow(delegate, "delegate");
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        queue.add(InvariantUtil.checkNotNullOrThrow(command, "command"));
+        drain();
+    }
+
+    private void drain() {
+        while (!queue.isEmpty()) {
+            final int current = active.get();
+            if (current >= maxConcurrency) {
+                return;
+            }
+            if (!active.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final Runnable task = queue.poll();
+            if (task == null) {
+                active.decrementAndGet();
+                continue;
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        active.decrementAndGet();
+                        drain();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                active.decrementAndGet();
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link Article} with a smaller heap footprint, created when compact articles are enabled on the connector
+ * (see {@link InfomediaConnector#setCompactArticles(boolean)}).
+ * <p>
+ * Values are kept in the fields of {@link Article}, except for the publish date, which is kept as epoch
+ * milliseconds and only formatted when read. Source names and sections, of which there are few, are
+ * canonicalized through bounded pools shared by all compact articles, and lists are stored as immutable
+ * lists. Sections are therefore shared between articles and neither they nor the lists may be modified.
+ */
+public class CompactArticle extends Article {
+    private static final long NO_PUBLISH_DATE = Long.MIN_VALUE;
+    private static final InternPool SOURCES = new InternPool(10_000);
+    private static final InternPool SECTIONS = new InternPool(10_000);
+
+    // The publish date field of Article only holds dates not restored exactly from epoch milliseconds
+    private long publishEpochMilli = NO_PUBLISH_DATE;
+
+    @Override
+    public String getPublishDate() {
+        if (publishEpochMilli == NO_PUBLISH_DATE) {
+            return super.getPublishDate();
+        }
+        return Instant.ofEpochMilli(publishEpochMilli).toString();
+    }
+
+    @Override
+    public void setPublishDate(String publishDate) {
+        publishEpochMilli = NO_PUBLISH_DATE;
+        super.setPublishDate(publishDate);
+        if (publishDate != null) {
+            try {
+                final long epochMilli = Instant.parse(publishDate).toEpochMilli();
+                if (publishDate.equals(Instant.ofEpochMilli(epochMilli).toString())) {
+                    publishEpochMilli = epochMilli;
+                    super.setPublishDate(null);
+                }
+            } catch (DateTimeException | ArithmeticException e) {
+                // Kept as text
+            }
+        }
+    }
+
+    /**
+     * @return the publish date, or null if absent or not an ISO-8601 instant
+     */
+    @JsonIgnore
+    public Instant getPublishInstant() {
+        if (publishEpochMilli != NO_PUBLISH_DATE) {
+            return Instant.ofEpochMilli(publishEpochMilli);
+        }
+        final String publishDateText = super.getPublishDate();
+        try {
+            return publishDateText == null ? null : Instant.parse(publishDateText);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void setSource(String source) {
+        super.setSource(SOURCES.intern(source));
+    }
+
+    @Override
+    public void setSection(Section section) {
+        super.setSection(section == null ? null
+                : SECTIONS.intern(section.getId() + '\n' + section.getName(), section));
+    }
+
+    @Override
+    public void setPageIds(List<String> pageIds) {
+        super.setPageIds(compact(pageIds));
+    }
+
+    @Override
+    public void setAuthors(List<String> authors) {
+        super.setAuthors(compact(authors));
+    }
+
+    @Override
+    public void setCaptions(List<String> captions) {
+        super.setCaptions(compact(captions));
+    }
+
+    private static List<String> compact(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        for (String value : values) {
+            if (value == null) {
+                return Collections.unmodifiableList(new ArrayList<>(values));
+            }
+        }
+        return List.copyOf(values);
+    }
+    /**
+     * Mix-in making Jackson bind {@link Article} values as {@link CompactArticle}
+     */
+    @JsonDeserialize(as = CompactArticle.class)
+    interface Binding {
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dk.dbc.invariant.InvariantUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Durable local store of fetched articles.
+ * <p>
+ * Articles are appended as JSON records to a single segment file and located through an in-memory
+ * id to offset index, which is rebuilt by scanning the segment when the store is opened. Reads go
+ * through a read-only memory mapping of the segment. Records appended since the segment was mapped are
+ * read from the file, and the segment is only mapped again once they add up to 64 MB. Storing an article
+ * again appends a new record and leaves the old one as garbage, which {@link #compact()} removes. Whenever
+ * a record would take the segment past the disk budget it is compacted first, and if live articles and the
+ * record alone exceed the budget the oldest are dropped. Articles larger than the budget are not stored.
+ * <p>
+ * Record layout: article id length (int), article id (UTF-8), JSON length (int), article JSON (UTF-8).
+ */
+public class DiskArticleStore implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskArticleStore.class);
+    private static final String SEGMENT_FILE = "articles.dat";
+    private static final String COMPACT_FILE = "articles.dat.compact";
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAPPING_CHUNK = 64 << 20;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer mapping;
+    private long mappedSize;
+    private long size;
+    private long liveBytes;
+
+    /**
+     * Opens or creates a store
+     *
+     * @param directory directory holding the segment file, created if missing
+     * @param maxBytes  disk budget for the segment file, at most {@link Integer#MAX_VALUE}
+     * @throws IOException on failure to open or scan the segment file
+     */
+    public DiskArticleStore(Path directory, long maxBytes) throws IOException {
+        this.directory = InvariantUtil.checkNotNullOrThrow(directory, "directory");
+        if (maxBytes < 1 || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxBytes must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    private void open() throws IOException {
+        final FileChannel opened = FileChannel.open(directory.resolve(SEGMENT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final MappedByteBuffer openedMapping;
+        try {
+            openedMapping = opened.map(FileChannel.MapMode.READ_ONLY, 0, opened.size());
+        } catch (IOException | RuntimeException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+        mapping = openedMapping;
+        size = openedMapping.capacity();
+        mappedSize = size;
+        index.clear();
+        liveBytes = 0;
+        long offset = 0;
+        while (offset + HEADER_SIZE <= size) {
+            final int idLength = mapping.getInt((int) offset);
+            if (idLength < 0 || offset + Integer.BYTES + idLength + Integer.BYTES > size) {
+                break;
+            }
+            final int jsonLength = mapping.getInt((int) offset + Integer.BYTES + idLength);
+            final long recordSize = HEADER_SIZE + (long) idLength + jsonLength;
+            if (jsonLength < 0 || offset + recordSize > size) {
+                break;
+            }
+            index(readString((int) offset + Integer.BYTES, idLength), new Location(offset, recordSize));
+            offset += recordSize;
+        }
+        if (offset < size) {
+            LOGGER.warn("Truncating incomplete record at offset {} of {}", offset, directory.resolve(SEGMENT_FILE));
+            channel.truncate(offset);
+            size = offset;
+            map();
+        }
+    }
+
+    private void map() throws IOException {
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        mappedSize = size;
+    }
+
+    /**
+     * Looks up articles
+     *
+     * @param articleIds ids of articles to look up
+     * @return stored articles keyed by article id, missing ids are absent
+     * @throws IOException on failure to read the segment file
+     */
+    public Map<String, Article> getAll(Collection<String> articleIds) throws IOException {
+        return getAll(articleIds, ArticleStreamReader.OBJECT_MAPPER);
+    }
+
+    /**
+     * Looks up articles, binding them through the given mapper
+     *
+     * @param articleIds   ids of articles to look up
+     * @param objectMapper mapper binding the stored JSON, e.g. {@link ArticleStreamReader#COMPACT_OBJECT_MAPPER}
+     *                     for {@link CompactArticle} instances
+     * @return stored articles keyed by article id, missing ids are absent
+     * @throws IOException on failure to read the segment file
+     */
+    Map<String, Article> getAll(Collection<String> articleIds, ObjectMapper objectMapper) throws IOException {
+        final Map<String, Article> result = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (String articleId : articleIds) {
+                final Location location = index.get(articleId);
+                if (location != null) {
+                    result.put(articleId, read(location, objectMapper));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Appends articles to the store, compacting the segment before it would exceed the disk budget
+     *
+     * @param articles articles to store
+     * @throws IOException on failure to write the segment file
+     */
+    public void putAll(Collection<Article> articles) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Article article : articles) {
+                if (article.getArticleId() != null) {
+                    append(article.getArticleId(),
+                            ArticleStreamReader.OBJECT_MAPPER.writeValueAsBytes(article));
+                }
+            }
+            if (size - mappedSize >= MAPPING_CHUNK) {
+                map();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the segment file with only the latest record of each article. If the live articles
+     * exceed the disk budget the oldest are dropped until the store is at three quarters of its budget.
+     *
+     * @throws IOException on failure to rewrite the segment file
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            compact(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the segment, making room for a record of the given size within the disk budget
+     */
+    private void compact(long incoming) throws IOException {
+        final List<Location> live = new ArrayList<>(index.values());
+        long keepBytes = liveBytes;
+        int first = 0;
+        if (liveBytes + incoming > maxBytes) {
+            while (keepBytes + incoming > maxBytes / 4 * 3 && first < live.size()) {
+                keepBytes -= live.get(first).length;
+                first++;
+            }
+        }
+        final Path compactFile = directory.resolve(COMPACT_FILE);
+        try (FileChannel target = FileChannel.open(compactFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Location location : live.subList(first, live.size())) {
+                long position = location.offset;
+                while (position < location.offset + location.length) {
+                    position += channel.transferTo(position, location.offset + location.length - position, target);
+                }
+            }
+            target.force(true);
+        }
+        // The live segment stays open until the compacted one has replaced it and is open
+        try {
+            Files.move(compactFile, directory.resolve(SEGMENT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(compactFile);
+            throw e;
+        }
+        LOGGER.info("Compacted {} from {} to {} bytes, dropped {} articles",
+                directory.resolve(SEGMENT_FILE), size, keepBytes, first);
+        final FileChannel previous = channel;
+        try {
+            open();
+        } finally {
+            if (channel != previous) {
+                previous.close();
+            }
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return size of the segment file in bytes, including records of overwritten articles
+     */
+    public long getSegmentBytes() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes taken up by the latest record of each stored article
+     */
+    public long getLiveBytes() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(String articleId, byte[] json) throws IOException {
+        final byte[] id = articleId.getBytes(StandardCharsets.UTF_8);
+        final long recordSize = HEADER_SIZE + (long) id.length + json.length;
+        if (recordSize > maxBytes) {
+            LOGGER.warn("Not storing article {} of {} bytes exceeding the disk budget of {} bytes",
+                    articleId, recordSize, maxBytes);
+            return;
+        }
+        if (size + recordSize > maxBytes) {
+            compact(recordSize);
+        }
+        final ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+        record.putInt(id.length).put(id).putInt(json.length).put(json).flip();
+        final long offset = size;
+        while (record.hasRemaining()) {
+            channel.write(record, size + record.position());
+        }
+        size += record.limit();
+        index(articleId, new Location(offset, record.limit()));
+    }
+
+    /**
+     * Points the article id at its latest record. Re-inserting keeps the index in write order,
+     * which is the order in which articles are dropped when over budget.
+     */
+    private void index(String articleId, Location location) {
+        final Location previous = index.remove(articleId);
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+        index.put(articleId, location);
+        liveBytes += location.length;
+    }
+
+    private Article read(Location location, ObjectMapper objectMapper) throws IOException {
+        final ByteBuffer record;
+        if (location.offset + location.length <= mappedSize) {
+            record = mapping.duplicate();
+            record.position((int) location.offset).limit((int) (location.offset + location.length));
+        } else {
+            // Appended since the segment was last mapped
+            record = ByteBuffer.allocate((int) location.length);
+            while (record.hasRemaining()) {
+                if (channel.read(record, location.offset + record.position()) < 0) {
+                    throw new IOException("Unexpected end of segment at offset " + location.offset);
+                }
+            }
+            record.flip();
+        }
+        final int idLength = record.getInt(record.position());
+        final int jsonOffset = record.position() + HEADER_SIZE + idLength;
+        final int jsonLength = record.getInt(jsonOffset - Integer.BYTES);
+        final byte[] bytes = new byte[jsonLength];
+        record.position(jsonOffset);
+        record.get(bytes);
+        return objectMapper.readValue(bytes, Article.class);
+    }
+
+    private String readString(int offset, int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer buffer = mapping.duplicate();
+        buffer.position(offset);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Location {
+        private final long offset;
+        private final long length;
+
+        private Location(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
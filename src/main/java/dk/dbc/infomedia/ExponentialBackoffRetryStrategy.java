@@ -0,0 +1,165 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.core.Response;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry strategy with exponential backoff, full jitter and a retry budget.
+ * <p>
+ * Connection failures and the statuses 429, 502, 503 and 504 are retried. 404 is retried a limited
+ * number of times on search and token requests, where Infomedia has been seen to return it spuriously,
+ * but never on fetch requests, where it means the articles do not exist. The delay before retry n is
+ * drawn uniformly from zero to min(maxDelay, baseDelay * 2^(n-1)), unless the response carries a
+ * Retry-After header, which is honoured as long as it does not exceed maxDelay.
+ * <p>
+ * The retry budget caps retries to a fraction of all requests: every request deposits that fraction
+ * of a retry and every retry withdraws a whole one. A small reserve allows retries while traffic is low.
+ */
+public class ExponentialBackoffRetryStrategy implements RetryStrategy {
+    private static final long MILLI_TOKENS = 1000;
+
+    private Duration baseDelay = Duration.ofMillis(500);
+    private Duration maxDelay = Duration.ofSeconds(30);
+    private int maxRetries = 6;
+    private int maxNotFoundRetries = 2;
+    private long budgetDeposit = 200;
+    private long budgetReserve = 10 * MILLI_TOKENS;
+    private long budgetCapacity = 100 * MILLI_TOKENS;
+    private final AtomicLong budget = new AtomicLong(budgetReserve);
+
+    public ExponentialBackoffRetryStrategy withBaseDelay(Duration baseDelay) {
+        this.baseDelay = InvariantUtil.checkNotNullOrThrow(baseDelay, "baseDelay");
+        return this;
+    }
+
+    public ExponentialBackoffRetryStrategy withMaxDelay(Duration maxDelay) {
+        this.maxDelay = InvariantUtil.checkNotNullOrThrow(maxDelay, "maxDelay");
+        return this;
+    }
+
+    public ExponentialBackoffRetryStrategy withMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public ExponentialBackoffRetryStrategy withMaxNotFoundRetries(int maxNotFoundRetries) {
+        this.maxNotFoundRetries = maxNotFoundRetries;
+        return this;
+    }
+
+    /**
+     * Sets the retry budget
+     *
+     * @param ratio   fraction of requests that may be retried, e.g. 0.2
+     * @param reserve number of retries allowed regardless of the ratio, also the initial budget
+     * @return this strategy
+     */
+    public ExponentialBackoffRetryStrategy withRetryBudget(double ratio, int reserve) {
+        if (ratio < 0 || reserve < 0) {
+            throw new IllegalArgumentException("ratio and reserve must not be negative");
+        }
+        this.budgetDeposit = (long) (ratio * MILLI_TOKENS);
+        this.budgetReserve = reserve * MILLI_TOKENS;
+        this.budgetCapacity = Math.max(budgetReserve, 100 * MILLI_TOKENS);
+        this.budget.set(budgetReserve);
+        return this;
+    }
+
+    /**
+     * @return number of retries currently left in the retry budget
+     */
+    public double getRemainingRetryBudget() {
+        return budget.get() / (double) MILLI_TOKENS;
+    }
+
+    @Override
+    public void recordRequest(String path) {
+        budget.updateAndGet(tokens -> Math.min(budgetCapacity, tokens + budgetDeposit));
+    }
+
+    @Override
+    public Duration retryDelay(String path, int attempt, Response response, RuntimeException failure) {
+        if (attempt > maxRetries || !isRetryable(path, attempt, response, failure)) {
+            return null;
+        }
+        Duration delay = jitteredBackoff(attempt);
+        if (response != null) {
+            final Duration retryAfter = parseRetryAfter(response.getHeaderString("Retry-After"));
+            if (retryAfter != null) {
+                if (retryAfter.compareTo(maxDelay) > 0) {
+                    return null;
+                }
+                delay = retryAfter;
+            }
+        }
+        return withdrawFromBudget() ? delay : null;
+    }
+
+    private boolean isRetryable(String path, int attempt, Response response, RuntimeException failure) {
+        if (response == null) {
+            return failure instanceof ProcessingException;
+        }
+        switch (response.getStatus()) {
+            case 429:
+            case 502:
+            case 503:
+            case 504:
+                return true;
+            case 404:
+                return !InfomediaConnector.URL_INFOMEDIA_FETCH.equals(path) && attempt <= maxNotFoundRetries;
+            default:
+                return false;
+        }
+    }
+
+    private Duration jitteredBackoff(int attempt) {
+        final long maxMillis = maxDelay.toMillis();
+        long backoffMillis = baseDelay.toMillis();
+        for (int i = 1; i < attempt && backoffMillis < maxMillis; i++) {
+            backoffMillis *= 2;
+        }
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(Math.min(maxMillis, backoffMillis) + 1));
+    }
+
+    private boolean withdrawFromBudget() {
+        long tokens;
+        do {
+            tokens = budget.get();
+            if (tokens < MILLI_TOKENS) {
+                return false;
+            }
+        } while (!budget.compareAndSet(tokens, tokens - MILLI_TOKENS));
+        return true;
+    }
+
+    static Duration parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                final Instant at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                final Duration delay = Duration.between(Instant.now(), at);
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException e2) {
+                return null;
+            }
+        }
+    }
+}
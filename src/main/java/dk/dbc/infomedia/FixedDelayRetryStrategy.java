@@ -0,0 +1,39 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.core.Response;
+
+import java.time.Duration;
+
+/**
+ * Default retry strategy of connectors created without one: connection failures and the statuses
+ * 404 and 502 are retried a fixed number of times after a fixed delay.
+ * <p>
+ * Retrying through a strategy rather than the policy of the {@link dk.dbc.httpclient.FailSafeHttpClient}
+ * lets the connector take a rate limiter permit for, and report, every attempt.
+ */
+class FixedDelayRetryStrategy implements RetryStrategy {
+    private final Duration delay;
+    private final int maxRetries;
+
+    FixedDelayRetryStrategy(Duration delay, int maxRetries) {
+        this.delay = delay;
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public Duration retryDelay(String path, int attempt, Response response, RuntimeException failure) {
+        if (attempt > maxRetries) {
+            return null;
+        }
+        if (response == null) {
+            return failure instanceof ProcessingException ? delay : null;
+        }
+        return response.getStatus() == 404 || response.getStatus() == 502 ? delay : null;
+    }
+}
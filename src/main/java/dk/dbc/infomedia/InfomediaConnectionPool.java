@@ -0,0 +1,354 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.core.StreamingOutput;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.apache.connector.ApacheHttpClientBuilderConfigurator;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientLifecycleListener;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+import org.glassfish.jersey.jackson.JacksonFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of keep-alive HTTP connections to one Infomedia base URL.
+ * <p>
+ * Clients created by {@link #newClientConfig(String, InfomediaTransportConfig)} for the same base URL and
+ * transport settings share one pool, which is shut down when the last of them is released. Connections idle
+ * for longer than the idle timeout are closed by a background thread. The pool counts the connections it
+ * opens and the time spent opening them, which for https includes the TLS handshake, so that connection
+ * churn shows up as growing counters.
+ */
+public final class InfomediaConnectionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InfomediaConnectionPool.class);
+    private static final Duration MIN_EVICTION_INTERVAL = Duration.ofSeconds(1);
+    private static final String LEASE_PROPERTY = "dk.dbc.infomedia.connectionPoolLease";
+    private static final ReentrantLock POOLS_LOCK = new ReentrantLock();
+    private static final Map<List<Object>, InfomediaConnectionPool> POOLS = new HashMap<>();
+    /**
+     * Sends search and fetch bodies, which are streamed while they are written, in chunks, and other bodies
+     * like the form of the token request buffered with a content length
+     */
+    private static final ClientRequestFilter ENTITY_PROCESSING = requestContext ->
+            requestContext.setProperty(ClientProperties.REQUEST_ENTITY_PROCESSING,
+                    requestContext.getEntity() instanceof StreamingOutput
+                            ? RequestEntityProcessing.CHUNKED : RequestEntityProcessing.BUFFERED);
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "infomedia-connection-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Object> key;
+    private final String baseUrl;
+    private final InfomediaTransportConfig config;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final ScheduledFuture<?> eviction;
+    private final AtomicLong openedConnections = new AtomicLong();
+    private final AtomicLong secureConnections = new AtomicLong();
+    private final AtomicLong connectNanos = new AtomicLong();
+    private int clients;
+
+    private InfomediaConnectionPool(List<Object> key, String baseUrl, InfomediaTransportConfig config) {
+        this.key = key;
+        this.baseUrl = baseUrl;
+        this.config = config;
+        final Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new CountingSocketFactory(PlainConnectionSocketFactory.getSocketFactory(), false))
+                .register("https", new CountingLayeredSocketFactory(SSLConnectionSocketFactory.getSocketFactory()))
+                .build();
+        connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connectionManager.setMaxTotal(config.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        connectionManager.setValidateAfterInactivity((int) config.getValidateAfterInactivity().toMillis());
+        final long evictionMillis = Math.max(config.getIdleTimeout().dividedBy(2).toMillis(),
+                MIN_EVICTION_INTERVAL.toMillis());
+        eviction = EVICTOR.scheduleWithFixedDelay(this::evictIdleConnections,
+                evictionMillis, evictionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns Jersey client configuration using the shared pool for the base URL and settings,
+     * creating the pool if needed. The pool is released when the client built from the configuration is closed
+     * after having been used, or by {@link #release(Client)}, so the configuration must be used for exactly
+     * one client.
+     *
+     * @param baseUrl base URL for infomedia api endpoint
+     * @param config  transport settings
+     * @return client configuration with pooled connector, timeouts and JSON support
+     */
+    public static ClientConfig newClientConfig(String baseUrl, InfomediaTransportConfig config) {
+        final InfomediaConnectionPool pool = acquire(baseUrl, config);
+        final Lease lease = new Lease(pool);
+        final InfomediaTransportConfig settings = pool.config;
+        return new ClientConfig()
+                .connectorProvider(new ApacheConnectorProvider())
+                .property(ApacheClientProperties.CONNECTION_MANAGER, pool.connectionManager)
+                .property(ApacheClientProperties.CONNECTION_MANAGER_SHARED, true)
+                .property(ApacheClientProperties.REQUEST_CONFIG, RequestConfig.custom()
+                        .setConnectionRequestTimeout((int) settings.getConnectionRequestTimeout().toMillis())
+                        .build())
+                .property(ClientProperties.CONNECT_TIMEOUT, (int) settings.getConnectTimeout().toMillis())
+                .property(ClientProperties.READ_TIMEOUT, (int) settings.getReadTimeout().toMillis())
+                .register(ENTITY_PROCESSING)
+                .property(LEASE_PROPERTY, lease)
+                .register(new JacksonFeature())
+                // Responses are decoded by the connector itself, which also counts compressed and decoded bytes
+                .register((ApacheHttpClientBuilderConfigurator) HttpClientBuilder::disableContentCompression)
+                .register(new ClientLifecycleListener() {
+                    @Override
+                    public void onInit() {
+                    }
+
+                    @Override
+                    public void onClose() {
+                        lease.release();
+                    }
+                });
+    }
+
+    /**
+     * Releases the use of the pool by a client created from
+     * {@link #newClientConfig(String, InfomediaTransportConfig)}. Jersey only notifies the pool when a client is
+     * closed after having sent a request, so owners of clients that may never have been used must call this
+     * before closing them. Releasing a client more than once, or a client not using a pool, has no effect.
+     *
+     * @param client web resources client, not yet closed
+     */
+    public static void release(Client client) {
+        final Object lease = client.getConfiguration().getProperty(LEASE_PROPERTY);
+        if (lease instanceof Lease) {
+            ((Lease) lease).release();
+        }
+    }
+
+    /**
+     * @param baseUrl base URL for infomedia api endpoint
+     * @param config  transport settings
+     * @return the pool currently shared for the base URL and settings, or null if no client uses one
+     */
+    public static InfomediaConnectionPool lookup(String baseUrl, InfomediaTransportConfig config) {
+        POOLS_LOCK.lock();
+        try {
+            return POOLS.get(Arrays.asList(baseUrl, config));
+        } finally {
+            POOLS_LOCK.unlock();
+        }
+    }
+
+    static InfomediaConnectionPool acquire(String baseUrl, InfomediaTransportConfig config) {
+        InvariantUtil.checkNotNullNotEmptyOrThrow(baseUrl, "baseUrl");
+        final InfomediaTransportConfig settings = new InfomediaTransportConfig(
+                InvariantUtil.checkNotNullOrThrow(config, "config"));
+        final List<Object> key = Arrays.asList(baseUrl, settings);
+        POOLS_LOCK.lock();
+        try {
+            final InfomediaConnectionPool pool = POOLS.computeIfAbsent(key,
+                    k -> new InfomediaConnectionPool(k, baseUrl, settings));
+            pool.clients++;
+            return pool;
+        } finally {
+            POOLS_LOCK.unlock();
+        }
+    }
+
+    void release() {
+        POOLS_LOCK.lock();
+        try {
+            if (--clients > 0) {
+                return;
+            }
+            POOLS.remove(key);
+        } finally {
+            POOLS_LOCK.unlock();
+        }
+        LOGGER.info("Shutting down connection pool for {}: {}", baseUrl, this);
+        eviction.cancel(false);
+        connectionManager.shutdown();
+    }
+
+    private void evictIdleConnections() {
+        try {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(config.getIdleTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to evict idle connections for {}", baseUrl, e);
+        }
+    }
+
+    PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public InfomediaTransportConfig getConfig() {
+        return new InfomediaTransportConfig(config);
+    }
+
+    /**
+     * @return number of connections currently serving requests
+     */
+    public int getLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    /**
+     * @return number of idle connections kept open for reuse
+     */
+    public int getAvailableConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    /**
+     * @return number of requests waiting for a connection
+     */
+    public int getPendingRequests() {
+        return connectionManager.getTotalStats().getPending();
+    }
+
+    /**
+     * @return number of connections opened since the pool was created
+     */
+    public long getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    /**
+     * @return number of TLS connections opened since the pool was created
+     */
+    public long getSecureConnections() {
+        return secureConnections.get();
+    }
+
+    /**
+     * @return total time spent opening connections, including TLS handshakes
+     */
+    public Duration getConnectTime() {
+        return Duration.ofNanos(connectNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        final PoolStats stats = connectionManager.getTotalStats();
+        return "InfomediaConnectionPool{" +
+                "baseUrl='" + baseUrl + '\'' +
+                ", leased=" + stats.getLeased() +
+                ", available=" + stats.getAvailable() +
+                ", pending=" + stats.getPending() +
+                ", max=" + stats.getMax() +
+                ", openedConnections=" + openedConnections.get() +
+                ", secureConnections=" + secureConnections.get() +
+                ", connectTime=" + getConnectTime() +
+                '}';
+    }
+
+    /**
+     * Use of the pool by one client, released at most once
+     */
+    private static class Lease {
+        private final InfomediaConnectionPool pool;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(InfomediaConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                pool.release();
+            }
+        }
+    }
+
+    /**
+     * Opens sockets through another factory while counting them and the time spent connecting
+     */
+    private class CountingSocketFactory implements ConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+        private final boolean secure;
+
+        private CountingSocketFactory(ConnectionSocketFactory delegate, boolean secure) {
+            this.delegate = delegate;
+            this.secure = secure;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            final long started = System.nanoTime();
+            final Socket connected = delegate.connectSocket(connectTimeout, socket, host, remoteAddress,
+                    localAddress, context);
+            connectNanos.addAndGet(System.nanoTime() - started);
+            openedConnections.incrementAndGet();
+            if (secure) {
+                secureConnections.incrementAndGet();
+            }
+            return connected;
+        }
+    }
+
+    private class CountingLayeredSocketFactory extends CountingSocketFactory implements LayeredConnectionSocketFactory {
+        private final LayeredConnectionSocketFactory delegate;
+
+        private CountingLayeredSocketFactory(LayeredConnectionSocketFactory delegate) {
+            super(delegate, true);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+                throws IOException {
+            final long started = System.nanoTime();
+            final Socket layered = delegate.createLayeredSocket(socket, target, port, context);
+            connectNanos.addAndGet(System.nanoTime() - started);
+            secureConnections.incrementAndGet();
+            return layered;
+        }
+    }
+}
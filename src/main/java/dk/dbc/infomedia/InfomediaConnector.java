@@ -5,6 +5,7 @@
 
 package dk.dbc.infomedia;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpPost;
 import dk.dbc.invariant.InvariantUtil;
@@ -13,17 +14,50 @@ import jakarta.ws.rs.ProcessingException;
 import jakarta.ws.rs.client.Client;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import net.jodah.failsafe.RetryPolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class InfomediaConnector {
     private static final Logger LOGGER = LoggerFactory.getLogger(InfomediaConnector.class);
@@ -32,25 +66,55 @@ public class InfomediaConnector {
         TRACE, DEBUG, INFO, WARN, ERROR
     }
 
-    private static final String URL_OAUTH_TOKEN = "/oauth/token";
-    private static final String URL_INFOMEDIA_SEARCH = "/api/v1/article/search";
-    private static final String URL_INFOMEDIA_FETCH = "/api/v1/article/fetch";
-    private static final RetryPolicy<Response> RETRY_POLICY = new RetryPolicy<Response>()
-            .handle(ProcessingException.class)
-            .handleResultIf(response -> response.getStatus() == 404
-                    || response.getStatus() == 502)
-            .withDelay(Duration.ofSeconds(10))
-            .withMaxRetries(6);
+    static final String URL_OAUTH_TOKEN = "/oauth/token";
+    static final String URL_INFOMEDIA_SEARCH = "/api/v1/article/search";
+    static final String URL_INFOMEDIA_FETCH = "/api/v1/article/fetch";
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final RetryPolicy<Response> NO_RETRY_POLICY = new RetryPolicy<Response>()
+            .withMaxRetries(0);
+    private static final int DEFAULT_PARALLELISM = 8;
+    // Runs calls made synchronously on the calling thread
+    private static final Executor CALLING_THREAD = Runnable::run;
+    private static final ScheduledExecutorService TOKEN_REFRESH_SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "infomedia-token-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
 
     private final FailSafeHttpClient failSafeHttpClient;
     private final String baseUrl;
     private final String username;
     private final String password;
     private final LogLevelMethod logger;
+    private final BooleanSupplier logEnabled;
+    private final RetryStrategy retryStrategy;
 
-    private Instant tokenExpiryDate = Instant.now();
-    private String bearerToken;
+    private final AtomicReference<BearerToken> bearerToken = new AtomicReference<>();
+    private final AtomicBoolean tokenRefreshing = new AtomicBoolean();
+    private final ReentrantLock authenticationLock = new ReentrantLock();
+    private volatile ScheduledFuture<?> scheduledRefresh;
+    private double tokenRefreshFraction = 0.8;
     private int pageSize = 300;
+    private int pagingConcurrency = 1;
+    private int fetchBatchSize = Integer.MAX_VALUE;
+    private int fetchConcurrency = 1;
+    private int pipelineCapacity = 4;
+    private ArticleCache articleCache;
+    private DiskArticleStore articleStore;
+    private InfomediaRateLimiter rateLimiter;
+    private InfomediaMetrics metrics = InfomediaMetrics.NONE;
+    private Predicate<Article> completeSearchArticle = InfomediaConnector::hasCompleteBodyText;
+    private boolean compactArticles;
+    private boolean responseCompression = true;
+    private boolean singleFlightFetches;
+    private SourceVolumes sourceVolumes;
+    private int sourceFanOutConcurrency = 4;
+    private final ConcurrentHashMap<String, CompletableFuture<Article>> inFlightArticles = new ConcurrentHashMap<>();
+    private final ExecutorService defaultExecutor = newDefaultExecutor();
+    private ExecutorService virtualThreadExecutor;
+    private Executor executor = defaultExecutor;
+    private volatile boolean closed;
 
     /**
      * Returns new instance with default retry policy
@@ -61,7 +125,7 @@ public class InfomediaConnector {
      * @param password   the password for the infomedia service
      */
     public InfomediaConnector(Client httpClient, String baseUrl, String username, String password) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, TimingLogLevel.INFO, username, password);
+        this(httpClient, baseUrl, TimingLogLevel.INFO, username, password);
     }
 
     /**
@@ -74,7 +138,24 @@ public class InfomediaConnector {
      * @param password   the password for the infomedia service
      */
     public InfomediaConnector(Client httpClient, String baseUrl, TimingLogLevel level, String username, String password) {
-        this(FailSafeHttpClient.create(httpClient, RETRY_POLICY), baseUrl, level, username, password);
+        this(FailSafeHttpClient.create(httpClient, NO_RETRY_POLICY), baseUrl, level, username, password,
+                new FixedDelayRetryStrategy(Duration.ofSeconds(10), 6));
+    }
+
+    /**
+     * Returns new instance with custom retry strategy
+     *
+     * @param httpClient    web resources client
+     * @param baseUrl       base URL for infomedia api endpoint
+     * @param level         log level
+     * @param username      the username for the infomedia service
+     * @param password      the password for the infomedia service
+     * @param retryStrategy decides which failed requests are retried and when
+     */
+    public InfomediaConnector(Client httpClient, String baseUrl, TimingLogLevel level, String username, String password,
+                              RetryStrategy retryStrategy) {
+        this(FailSafeHttpClient.create(httpClient, NO_RETRY_POLICY), baseUrl, level, username, password,
+                InvariantUtil.checkNotNullOrThrow(retryStrategy, "retryStrategy"));
     }
 
     /**
@@ -99,6 +180,12 @@ public class InfomediaConnector {
      * @param password           the password for the infomedia service
      */
     public InfomediaConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, TimingLogLevel level, String username, String password) {
+        this(failSafeHttpClient, baseUrl, level, username, password, null);
+    }
+
+    private InfomediaConnector(FailSafeHttpClient failSafeHttpClient, String baseUrl, TimingLogLevel level, String username,
+                               String password, RetryStrategy retryStrategy) {
+        this.retryStrategy = retryStrategy;
         this.failSafeHttpClient = InvariantUtil.checkNotNullOrThrow(failSafeHttpClient, "failSafeHttpClient");
         this.baseUrl = InvariantUtil.checkNotNullNotEmptyOrThrow(baseUrl, "baseUrl");
         this.username = InvariantUtil.checkNotNullOrThrow(username, "username");
@@ -106,21 +193,27 @@ public class InfomediaConnector {
         switch (level) {
             case TRACE:
                 logger = LOGGER::trace;
+                logEnabled = LOGGER::isTraceEnabled;
                 break;
             case DEBUG:
                 logger = LOGGER::debug;
+                logEnabled = LOGGER::isDebugEnabled;
                 break;
             case INFO:
                 logger = LOGGER::info;
+                logEnabled = LOGGER::isInfoEnabled;
                 break;
             case WARN:
                 logger = LOGGER::warn;
+                logEnabled = LOGGER::isWarnEnabled;
                 break;
             case ERROR:
                 logger = LOGGER::error;
+                logEnabled = LOGGER::isErrorEnabled;
                 break;
             default:
                 logger = LOGGER::info;
+                logEnabled = LOGGER::isInfoEnabled;
                 break;
         }
     }
@@ -133,49 +226,446 @@ public class InfomediaConnector {
         this.pageSize = pageSize;
     }
 
+    public int getPagingConcurrency() {
+        return pagingConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of search requests run concurrently by a single search.
+     * <p>
+     * With a value of 1 (the default) pages are fetched one after another. With higher values
+     * the remaining pages are fetched in parallel on the connector executor once the first
+     * page has reported the number of hits. The same limit applies to the sub-intervals
+     * searched by {@link #searchAllArticleIdsByPublishDate(Instant, Duration, Set)}.
+     *
+     * @param pagingConcurrency maximum number of concurrent search requests per search
+     */
+    public void setPagingConcurrency(int pagingConcurrency) {
+        if (pagingConcurrency < 1) {
+            throw new IllegalArgumentException("pagingConcurrency must be at least 1");
+        }
+        this.pagingConcurrency = pagingConcurrency;
+    }
+
+    public int getFetchBatchSize() {
+        return fetchBatchSize;
+    }
+
+    /**
+     * Sets the maximum number of article ids sent in a single fetch request.
+     * <p>
+     * Larger id sets passed to {@link #getArticles(Set)} are split into batches of at most this
+     * size and the replies are merged into one {@link ArticleList}. By default all ids are
+     * sent in one request.
+     *
+     * @param fetchBatchSize maximum number of ids per fetch request
+     */
+    public void setFetchBatchSize(int fetchBatchSize) {
+        if (fetchBatchSize < 1) {
+            throw new IllegalArgumentException("fetchBatchSize must be at least 1");
+        }
+        this.fetchBatchSize = fetchBatchSize;
+    }
+
+    public int getFetchConcurrency() {
+        return fetchConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of fetch batches requested concurrently by a single
+     * {@link #getArticles(Set)} call. With a value of 1 (the default) batches are fetched
+     * one after another.
+     *
+     * @param fetchConcurrency maximum number of concurrent fetch requests per call
+     */
+    public void setFetchConcurrency(int fetchConcurrency) {
+        if (fetchConcurrency < 1) {
+            throw new IllegalArgumentException("fetchConcurrency must be at least 1");
+        }
+        this.fetchConcurrency = fetchConcurrency;
+    }
+
+    public int getPipelineCapacity() {
+        return pipelineCapacity;
+    }
+
+    /**
+     * Sets the maximum number of search pages searched ahead of the fetches of
+     * {@link #harvestArticlesByPublishDate(Instant, Duration, Set, Consumer)}.
+     *
+     * @param pipelineCapacity maximum number of pages of ids searched but not yet fetched
+     */
+    public void setPipelineCapacity(int pipelineCapacity) {
+        if (pipelineCapacity < 1) {
+            throw new IllegalArgumentException("pipelineCapacity must be at least 1");
+        }
+        this.pipelineCapacity = pipelineCapacity;
+    }
+
+    public boolean isCompactArticles() {
+        return compactArticles;
+    }
+
+    /**
+     * Makes the connector return {@link CompactArticle} instances, which take up less heap when many
+     * articles are held in memory at once. Disabled by default.
+     *
+     * @param compactArticles true to bind articles from search and fetch responses and from the article store
+     *                        as compact articles
+     */
+    public void setCompactArticles(boolean compactArticles) {
+        this.compactArticles = compactArticles;
+    }
+
+    public boolean isResponseCompression() {
+        return responseCompression;
+    }
+
+    /**
+     * Makes the connector ask for gzip or deflate compressed search and fetch responses, which are
+     * decoded while being parsed. Enabled by default.
+     *
+     * @param responseCompression true to accept compressed responses
+     */
+    public void setResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+    }
+
+    public boolean isSingleFlightFetches() {
+        return singleFlightFetches;
+    }
+
+    /**
+     * Makes concurrent {@link #getArticles(Set)} calls share fetches: ids already being fetched for another
+     * caller are not requested again, instead the caller waits for the fetch in flight and picks its articles
+     * from it. Should that fetch fail, the ids are fetched again. Shared articles are the same instances for
+     * all callers and must not be modified. Disabled by default.
+     *
+     * @param singleFlightFetches true to share concurrent fetches of the same article ids
+     */
+    public void setSingleFlightFetches(boolean singleFlightFetches) {
+        this.singleFlightFetches = singleFlightFetches;
+    }
+
+    public SourceVolumes getSourceVolumes() {
+        return sourceVolumes;
+    }
+
+    /**
+     * Makes id searches for several sources fan out into concurrent sub-queries per group of sources.
+     * <p>
+     * Sources are grouped by their expected volume for the search interval so that each group fits in
+     * a single page, which makes the search independent of the random order of pages. A group yielding
+     * more hits than expected is split and searched again, a single source yielding more than a page
+     * falls back to the behaviour of the search method. The id sets of all groups are merged. The volumes
+     * learn from every sub-query and may be shared between connectors. Applies to
+     * {@link #searchArticleIdsByPublishDate(Instant, Duration, Set)} and
+     * {@link #searchAllArticleIdsByPublishDate(Instant, Duration, Set)}. Disabled by default.
+     *
+     * @param sourceVolumes per-source article volumes, null to disable fan-out
+     */
+    public void setSourceVolumes(SourceVolumes sourceVolumes) {
+        this.sourceVolumes = sourceVolumes;
+    }
+
+    public int getSourceFanOutConcurrency() {
+        return sourceFanOutConcurrency;
+    }
+
+    /**
+     * Sets the maximum number of search requests run concurrently by a search fanning out over source groups
+     * (see {@link #setSourceVolumes(SourceVolumes)}). Defaults to 4.
+     *
+     * @param sourceFanOutConcurrency maximum number of concurrent search requests per search
+     */
+    public void setSourceFanOutConcurrency(int sourceFanOutConcurrency) {
+        if (sourceFanOutConcurrency < 1) {
+            throw new IllegalArgumentException("sourceFanOutConcurrency must be at least 1");
+        }
+        this.sourceFanOutConcurrency = sourceFanOutConcurrency;
+    }
+
+    /**
+     * Sets the predicate deciding whether an article returned by a search page is complete, in which case
+     * {@link #searchArticlesByPublishDate(Instant, Duration, Set)} does not fetch it again.
+     * Defaults to {@link #hasCompleteBodyText(Article)}.
+     *
+     * @param completeSearchArticle predicate testing articles from search pages
+     */
+    public void setCompleteSearchArticle(Predicate<Article> completeSearchArticle) {
+        this.completeSearchArticle = InvariantUtil.checkNotNullOrThrow(completeSearchArticle, "completeSearchArticle");
+    }
+
+    public ArticleCache getArticleCache() {
+        return articleCache;
+    }
+
+    /**
+     * Sets a cache consulted by {@link #getArticles(Set)} and {@link #getArticles(Set, Consumer)}.
+     * <p>
+     * Only ids missing from the cache are fetched from Infomedia, and fetched articles are added
+     * to the cache. Results are then returned in the order of the requested ids. By default
+     * no cache is used.
+     *
+     * @param articleCache article cache, null to disable caching
+     */
+    public void setArticleCache(ArticleCache articleCache) {
+        this.articleCache = articleCache;
+    }
+
+    public DiskArticleStore getArticleStore() {
+        return articleStore;
+    }
+
+    /**
+     * Sets a persistent store consulted by {@link #getArticles(Set)} and {@link #getArticles(Set, Consumer)}
+     * after the article cache, if any.
+     * <p>
+     * Only ids found in neither are fetched from Infomedia, and fetched articles are appended to the store.
+     * The store is owned by the caller and is not closed by {@link #close()}. By default no store is used.
+     *
+     * @param articleStore article store, null to disable
+     */
+    public void setArticleStore(DiskArticleStore articleStore) {
+        this.articleStore = articleStore;
+    }
+
+    public double getTokenRefreshFraction() {
+        return tokenRefreshFraction;
+    }
+
+    /**
+     * Sets the fraction of a bearer token's lifetime after which it is refreshed in the background,
+     * also while no requests are made, until the connector is closed. Defaults to 0.8.
+     *
+     * @param tokenRefreshFraction fraction of expires_in, between 0 and 1
+     */
+    public void setTokenRefreshFraction(double tokenRefreshFraction) {
+        if (tokenRefreshFraction < 0 || tokenRefreshFraction > 1) {
+            throw new IllegalArgumentException("tokenRefreshFraction must be between 0 and 1");
+        }
+        this.tokenRefreshFraction = tokenRefreshFraction;
+    }
+
+    public InfomediaRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets a limiter consulted before every request attempt and before every fetch.
+     * Callers wait until the limiter permits the request. By default requests are not limited.
+     * Connectors created with a custom {@link FailSafeHttpClient} leave retries to the policy of the client,
+     * which retries without consulting the limiter, so only the first attempt of each request is limited.
+     *
+     * @param rateLimiter rate limiter, may be shared between connectors using the same account, null to disable
+     */
+    public void setRateLimiter(InfomediaRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public InfomediaMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the receiver of request measurements. By default measurements are discarded.
+     *
+     * @param metrics metrics receiver
+     */
+    public void setMetrics(InfomediaMetrics metrics) {
+        this.metrics = InvariantUtil.checkNotNullOrThrow(metrics, "metrics");
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor on which asynchronous operations are run.
+     * <p>
+     * Executors passed in here are owned by the caller and are not shut down by {@link #close()}.
+     * Until this method is called a small bounded pool owned by the connector is used.
+     *
+     * @param executor executor for asynchronous operations
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = InvariantUtil.checkNotNullOrThrow(executor, "executor");
+    }
+
+    /**
+     * @return true if asynchronous operations run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreadExecutor != null && executor == virtualThreadExecutor;
+    }
+
+    /**
+     * Makes asynchronous operations, including the concurrent pages, fetch batches and source groups of
+     * bulk operations, run on a virtual thread each instead of on the small platform thread pool.
+     * <p>
+     * Blocked requests then no longer hold on to a platform thread, so concurrency is bounded only by the
+     * per-operation limits ({@link #setPagingConcurrency(int)}, {@link #setFetchConcurrency(int)},
+     * {@link #setSourceFanOutConcurrency(int)}) and by the connection pool. Waiting for a bearer token
+     * uses a {@link ReentrantLock}, which does not pin the carrier thread. Requires Java 21 or later,
+     * on older JDKs a warning is logged and the platform thread pool is kept. Replaces any executor set by
+     * {@link #setExecutor(Executor)}. Disabled by default.
+     *
+     * @param virtualThreads true to run asynchronous operations on virtual threads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        if (!virtualThreads) {
+            if (isVirtualThreads()) {
+                executor = defaultExecutor;
+            }
+            return;
+        }
+        if (virtualThreadExecutor == null) {
+            virtualThreadExecutor = VirtualThreads.newExecutor("infomedia-connector-virtual-");
+            if (virtualThreadExecutor == null) {
+                LOGGER.warn("Virtual threads are not supported by Java {} - using platform threads",
+                        System.getProperty("java.version"));
+                return;
+            }
+        }
+        executor = virtualThreadExecutor;
+    }
+
     /**
      * This function is responsible for keeping the bearer token up to date
+     * <p>
+     * In steady state the current token is read without locking. Once a token has lived for the
+     * configured fraction of its lifetime a single background refresh is started while callers keep
+     * using the current token. The refresh is scheduled when the token is issued, so it also happens while
+     * the connector is idle, until the connector is closed. Only when no valid token exists, e.g. after a
+     * failed refresh, do callers wait for a new one, in which case a single caller requests it while the
+     * others wait on the authentication lock.
      *
-     * @throws InfomediaConnectorException
+     * @return a valid bearer token
+     * @throws InfomediaConnectorException on failure to obtain a token
      */
-    private void authenticate() throws InfomediaConnectorException {
-        synchronized (this) {
-            if (!authTokenIsValid()) {
-                final Stopwatch stopwatch = new Stopwatch();
-                try {
-                    logger.log("Token expired - getting new one");
-                    final String data = String.format("grant_type=password&username=%s&password=%s", username, password);
-                    final HttpPost httpPost = new HttpPost(failSafeHttpClient)
-                            .withBaseUrl(baseUrl)
-                            .withPathElements(URL_OAUTH_TOKEN)
-                            .withData(data, MediaType.TEXT_PLAIN);
+    private String authenticate() throws InfomediaConnectorException {
+        final BearerToken current = bearerToken.get();
+        final Instant now = Instant.now();
+        if (current != null && now.isBefore(current.expiresAt)) {
+            if (!now.isBefore(current.refreshAt)) {
+                refreshInBackground(current);
+            }
+            return current.value;
+        }
 
+        authenticationLock.lock();
+        try {
+            BearerToken token = bearerToken.get();
+            if (token == null || !Instant.now().isBefore(token.expiresAt)) {
+                logger.log("Token expired - getting new one");
+                token = requestToken();
+                tokenIssued(token);
+            }
+            return token.value;
+        } finally {
+            authenticationLock.unlock();
+        }
+    }
 
-                    final Response response = httpPost.execute();
-                    assertResponseStatus(response, Response.Status.OK);
-                    final AuthToken auth = readResponseEntity(response, AuthToken.class);
+    /**
+     * Makes the token current and schedules its refresh. Called while holding the authentication lock.
+     */
+    private void tokenIssued(BearerToken token) {
+        bearerToken.set(token);
+        final ScheduledFuture<?> previous = scheduledRefresh;
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        final long delayNanos = Math.max(0, Duration.between(Instant.now(), token.refreshAt).toNanos());
+        final ScheduledFuture<?> refresh = TOKEN_REFRESH_SCHEDULER.schedule(() -> refreshInBackground(token),
+                delayNanos, TimeUnit.NANOSECONDS);
+        scheduledRefresh = refresh;
+        if (closed) {
+            refresh.cancel(false);
+        }
+    }
 
-                    updateAuthToken(auth);
+    /**
+     * Starts a refresh of the given token on the executor, unless it has already been replaced or
+     * another refresh is running
+     */
+    private void refreshInBackground(BearerToken due) {
+        if (closed || !tokenRefreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                authenticationLock.lock();
+                try {
+                    if (bearerToken.get() == due) {
+                        logger.log("Token due for refresh - getting new one");
+                        tokenIssued(requestToken());
+                    }
+                } catch (InfomediaConnectorException | RuntimeException e) {
+                    LOGGER.warn("Background token refresh failed", e);
                 } finally {
-                    logger.log("POST {} took {} milliseconds", URL_OAUTH_TOKEN,
-                            stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+                    authenticationLock.unlock();
+                    tokenRefreshing.set(false);
                 }
-            }
+            });
+        } catch (RejectedExecutionException e) {
+            tokenRefreshing.set(false);
+            LOGGER.warn("Background token refresh rejected", e);
         }
     }
 
-    private void updateAuthToken(AuthToken authToken) {
-        this.bearerToken = authToken.getAccessToken();
-        this.tokenExpiryDate = Instant.now().plusSeconds(authToken.getExpiresIn());
-        logger.log("Bearer token renewed. New expire time is {}", this.tokenExpiryDate.toString());
-    }
+    private BearerToken requestToken() throws InfomediaConnectorException {
+        final InfomediaMetrics metrics = this.metrics;
+        final Stopwatch stopwatch = new Stopwatch();
+        metrics.requestStarted(URL_OAUTH_TOKEN);
+        boolean success = false;
+        try {
+            final String data = String.format("grant_type=password&username=%s&password=%s", username, password);
+            final HttpPost httpPost = new HttpPost(failSafeHttpClient)
+                    .withBaseUrl(baseUrl)
+                    .withPathElements(URL_OAUTH_TOKEN)
+                    .withData(data, MediaType.TEXT_PLAIN);
 
-    private boolean authTokenIsValid() {
-        return Instant.now().compareTo(this.tokenExpiryDate) < 0;
+            final Response response = execute(URL_OAUTH_TOKEN, httpPost);
+            final AuthToken auth;
+            try {
+                assertResponseStatus(response, Response.Status.OK);
+                recordResponseBytes(metrics, URL_OAUTH_TOKEN, response);
+                auth = readResponseEntity(response, AuthToken.class);
+            } finally {
+                response.close();
+            }
+
+            final BearerToken token = new BearerToken(auth, Instant.now(), tokenRefreshFraction);
+            logger.log("Bearer token renewed. New expire time is {}", token.expiresAt);
+            metrics.tokenRefreshed();
+            success = true;
+            return token;
+        } finally {
+            final long elapsedNanos = stopwatch.getElapsedTime(TimeUnit.NANOSECONDS);
+            metrics.requestCompleted(URL_OAUTH_TOKEN, Duration.ofNanos(elapsedNanos), success);
+            if (logEnabled.getAsBoolean()) {
+                logger.log("POST {} took {} milliseconds", URL_OAUTH_TOKEN, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            }
+        }
     }
 
     public void close() {
-        failSafeHttpClient.getClient().close();
+        defaultExecutor.shutdown();
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+        final Client client = failSafeHttpClient.getClient();
+        if (!closed) {
+            closed = true;
+            final ScheduledFuture<?> refresh = scheduledRefresh;
+            if (refresh != null) {
+                refresh.cancel(false);
+            }
+            // Also when no request was ever sent, which Jersey does not report to the pool
+            InfomediaConnectionPool.release(client);
+        }
+        client.close();
     }
 
     /**
@@ -203,98 +693,1107 @@ public class InfomediaConnector {
      */
     public Set<String> searchArticleIdsByPublishDate(Instant publishDate, Duration publishDuration, Set<String> sources)
             throws InfomediaConnectorException {
-        final Set<String> result = new HashSet<>();
-        int count = 0;
-
-        /*
-         * A thing to note about pagination: The order of the articles seems to be in random order in each request.
-         * That means each page will grab the items from different lists thus not resulting in a complete list.
-         * For now we just ignore that problem as a pagesize of 300 seems to be fine.
-         */
-        ArticleSearchResult reply;
-        do {
-            final ArticleSearchRequest body = new ArticleSearchRequest();
-            body.setIqlQuery(String.format("sourcecode:[%s] AND publishdate:[%s..%s]",
-                    String.join(",", sources), publishDate.toString(), publishDate.plus(publishDuration).toString()));
-            body.setSearchRange(new SearchRange(publishDate, publishDate.plus(publishDuration)));
-            body.setPagingParameter(new PagingParameter(count, this.pageSize));
-            reply = postRequest(URL_INFOMEDIA_SEARCH, body, ArticleSearchResult.class);
-            count += this.pageSize;
-            result.addAll(reply.getArticleIds());
-        } while (count < reply.getNumFound());
+        return join(searchArticleIds(publishDate, publishDuration, sources, CALLING_THREAD));
+    }
 
-        return result;
+    private CompletableFuture<Set<String>> searchArticleIds(Instant publishDate, Duration publishDuration,
+                                                            Set<String> sources, Executor callExecutor) {
+        if (isSourceFanOut(sources)) {
+            return searchSourceGroups(publishDate, publishDuration, sources, false);
+        }
+        return searchPagesAsync(publishDate, publishDuration, sources, callExecutor).thenApply(pages -> {
+            final Set<String> result = new HashSet<>();
+            for (ArticleSearchResult reply : pages) {
+                result.addAll(reply.getArticleIds());
+            }
+            return result;
+        });
     }
 
     /**
-     * This function is used for getting full article data from Informedia
+     * This function is used for finding all articles for a single source, see
+     * {@link #searchAllArticleIdsByPublishDate(Instant, Duration, Set)}
      *
-     * @param articleIds The list of article ids
-     * @return List of articles with full data from Infomedia
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param source          Name of article source (e.g. newspapers)
+     * @return A list of article ids
      * @throws InfomediaConnectorException On failure to read result entity from response
      */
-    public ArticleList getArticles(Set<String> articleIds) throws InfomediaConnectorException {
-        // Infomedia returns a different DTO when request is an empty list. To avoid that situation we simple return an
-        // empty list if the articleIds is empty
-        if (articleIds == null || articleIds.isEmpty()) {
-            ArticleList result = new ArticleList();
-            result.setArticles(new ArrayList<>());
+    public Set<String> searchAllArticleIdsByPublishDate(Instant publishDate, Duration publishDuration, String source)
+            throws InfomediaConnectorException {
+        return searchAllArticleIdsByPublishDate(publishDate, publishDuration, new HashSet<>(Collections.singletonList(source)));
+    }
 
-            return result;
+    /**
+     * This function is used for finding all articles for sources limited by an interval
+     * <p>
+     * Unlike {@link #searchArticleIdsByPublishDate(Instant, Duration, Set)} the result does not depend on
+     * pagination. Whenever a search yields more hits than fit in a single page the interval is split in two
+     * and each half is searched again, until every sub-interval fits in one page. Sub-intervals are searched
+     * concurrently, bounded by {@link #setPagingConcurrency(int)}. Intervals of one second, which cannot be
+     * split further, fall back to paging.
+     *
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param sources         Name of article sources (e.g. newspapers)
+     * @return A list of article ids
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public Set<String> searchAllArticleIdsByPublishDate(Instant publishDate, Duration publishDuration, Set<String> sources)
+            throws InfomediaConnectorException {
+        if (isSourceFanOut(sources)) {
+            return join(searchSourceGroups(publishDate, publishDuration, sources, true));
         }
+        final Executor windowExecutor = new BoundedExecutor(executor, pagingConcurrency);
+        final AtomicInteger pages = new AtomicInteger();
+        return join(recordSearchPages(searchWindow(publishDate, publishDuration, sources, windowExecutor, pages), pages));
+    }
 
-        final String body = "[\"" + String.join("\",\"", articleIds) + "\"]";
-
-        return postRequest(URL_INFOMEDIA_FETCH, body, ArticleList.class);
+    private CompletableFuture<Set<String>> searchWindow(Instant publishDate, Duration publishDuration, Set<String> sources,
+                                                        Executor windowExecutor, AtomicInteger pages) {
+        final SearchRequestTemplate template = new SearchRequestTemplate(publishDate, publishDuration, sources, pageSize);
+        return supplyAsync(() -> searchPage(template, 0, pages), windowExecutor)
+                .thenCompose(reply -> splitWindow(template, reply, publishDate, publishDuration, sources, windowExecutor,
+                        pages));
     }
 
-    private <S, T> T postRequest(String path, S data, Class<T> returnType) throws InfomediaConnectorException {
-        authenticate(); // Make sure we have a token
-        logger.log("POST {} with data {}", path, data);
-        final Stopwatch stopwatch = new Stopwatch();
-        try {
-            final HttpPost httpPost = new HttpPost(failSafeHttpClient)
-                    .withBaseUrl(baseUrl)
-                    .withPathElements(path)
-                    .withJsonData(data)
-                    .withHeader("Accept", "application/json")
-                    .withHeader("Content-type", "application/json")
-                    .withHeader("Authorization", "bearer " + this.bearerToken);
-            final Response response = httpPost.execute();
-            assertResponseStatus(response, Response.Status.OK);
-            return readResponseEntity(response, returnType);
-        } finally {
-            logger.log("POST {} took {} milliseconds", path,
-                    stopwatch.getElapsedTime(TimeUnit.MILLISECONDS));
+    private CompletableFuture<Set<String>> splitWindow(SearchRequestTemplate template, ArticleSearchResult reply,
+                                                       Instant publishDate, Duration publishDuration, Set<String> sources,
+                                                       Executor windowExecutor, AtomicInteger pages) {
+        if (reply.getNumFound() <= this.pageSize) {
+            return CompletableFuture.completedFuture(new HashSet<>(reply.getArticleIds()));
+        }
+        final Duration half = publishDuration.dividedBy(2).truncatedTo(ChronoUnit.SECONDS);
+        if (half.isZero()) {
+            LOGGER.warn("{} hits in {} second interval from {} exceeds page size {} - paging",
+                    reply.getNumFound(), publishDuration.getSeconds(), publishDate, this.pageSize);
+            return remainingPages(template, reply, windowExecutor, pages);
         }
+        // Both ends of the publishdate interval are inclusive, so the halves overlap in their
+        // shared boundary. Articles published at that instant are merged by the set union.
+        return searchWindow(publishDate, half, sources, windowExecutor, pages)
+                .thenCombine(searchWindow(publishDate.plus(half), publishDuration.minus(half), sources, windowExecutor,
+                        pages), InfomediaConnector::union);
     }
 
-    private <T> T readResponseEntity(Response response, Class<T> type)
-            throws InfomediaConnectorException {
-        final T entity = response.readEntity(type);
-        if (entity == null) {
-            throw new InfomediaConnectorException(
-                    String.format("infomedia service returned with null-valued %s entity",
-                            type.getName()));
-        }
-        return entity;
+    private CompletableFuture<Set<String>> remainingPages(SearchRequestTemplate template, ArticleSearchResult firstPage,
+                                                          Executor pageExecutor, AtomicInteger pages) {
+        return supplyAsync(() -> {
+            final Set<String> result = new HashSet<>(firstPage.getArticleIds());
+            for (int count = this.pageSize; count < firstPage.getNumFound(); count += this.pageSize) {
+                result.addAll(searchPage(template, count, pages).getArticleIds());
+            }
+            return result;
+        }, pageExecutor);
     }
 
-    private void assertResponseStatus(Response response, Response.Status expectedStatus)
-            throws InfomediaConnectorUnexpectedStatusCodeException {
-        final Response.Status actualStatus =
-                Response.Status.fromStatusCode(response.getStatus());
-        if (actualStatus != expectedStatus) {
-            throw new InfomediaConnectorUnexpectedStatusCodeException(
-                    String.format("infomedia service returned with unexpected status code: %s",
-                            actualStatus),
-                    actualStatus.getStatusCode());
+    private boolean isSourceFanOut(Set<String> sources) {
+        return sourceVolumes != null && sources.size() > 1;
+    }
+
+    private CompletableFuture<Set<String>> searchSourceGroups(Instant publishDate, Duration publishDuration,
+                                                              Set<String> sources, boolean splitWindows) {
+        final Executor groupExecutor = new BoundedExecutor(executor, sourceFanOutConcurrency);
+        final List<Set<String>> groups = sourceVolumes.group(sources, publishDuration, pageSize);
+        LOGGER.debug("Searching {} sources in {} groups", sources.size(), groups.size());
+        final AtomicInteger pages = new AtomicInteger();
+        CompletableFuture<Set<String>> result = CompletableFuture.completedFuture(new HashSet<>());
+        for (Set<String> group : groups) {
+            result = result.thenCombine(searchSourceGroup(publishDate, publishDuration, group, splitWindows, groupExecutor,
+                    pages), InfomediaConnector::union);
         }
+        return recordSearchPages(result, pages);
     }
 
-    @FunctionalInterface
-    interface LogLevelMethod {
-        void log(String format, Object... objs);
+    private CompletableFuture<Set<String>> searchSourceGroup(Instant publishDate, Duration publishDuration,
+                                                             Set<String> group, boolean splitWindows,
+                                                             Executor groupExecutor, AtomicInteger pages) {
+        final SourceVolumes volumes = sourceVolumes;
+        final SearchRequestTemplate template = new SearchRequestTemplate(publishDate, publishDuration, group, pageSize);
+        return supplyAsync(() -> searchPage(template, 0, pages), groupExecutor)
+                .thenCompose(reply -> {
+                    volumes.observe(group, publishDuration, reply.getNumFound());
+                    if (reply.getNumFound() <= this.pageSize) {
+                        return CompletableFuture.completedFuture(new HashSet<>(reply.getArticleIds()));
+                    }
+                    if (group.size() > 1) {
+                        // The group was larger than expected, search each half of its sources on their own
+                        final List<String> members = new ArrayList<>(group);
+                        final int half = members.size() / 2;
+                        return searchSourceGroup(publishDate, publishDuration,
+                                new LinkedHashSet<>(members.subList(0, half)), splitWindows, groupExecutor, pages)
+                                .thenCombine(searchSourceGroup(publishDate, publishDuration,
+                                        new LinkedHashSet<>(members.subList(half, members.size())), splitWindows,
+                                        groupExecutor, pages), InfomediaConnector::union);
+                    }
+                    if (splitWindows) {
+                        return splitWindow(template, reply, publishDate, publishDuration, group, groupExecutor, pages);
+                    }
+                    return remainingPages(template, reply, groupExecutor, pages);
+                });
+    }
+
+    /**
+     * Reports the pages requested by a search made of several sub-searches once all of them have completed
+     */
+    private <T> CompletableFuture<T> recordSearchPages(CompletableFuture<T> search, AtomicInteger pages) {
+        return search.thenApply(result -> {
+            metrics.searchPages(pages.get());
+            return result;
+        });
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        first.addAll(second);
+        return first;
+    }
+
+    /**
+     * This function is used for finding articles with full data for a single source, see
+     * {@link #searchArticlesByPublishDate(Instant, Duration, Set)}
+     *
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param source          Name of article source (e.g. newspapers)
+     * @return List of articles with full data from Infomedia
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public ArticleList searchArticlesByPublishDate(Instant publishDate, Duration publishDuration, String source)
+            throws InfomediaConnectorException {
+        return searchArticlesByPublishDate(publishDate, publishDuration, new HashSet<>(Collections.singletonList(source)));
+    }
+
+    /**
+     * This function is used for finding articles with full data for sources limited by an interval
+     * <p>
+     * Search pages already carry article data. Articles considered complete by the search article
+     * predicate (see {@link #setCompleteSearchArticle(Predicate)}) are returned as they came from the
+     * search, only the remaining articles are fetched through {@link #getArticles(Set)}. Articles the fetch
+     * does not return are left out, with a warning, rather than returned with their truncated search data.
+     * Pagination caveats are the same as for {@link #searchArticleIdsByPublishDate(Instant, Duration, Set)}.
+     *
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param sources         Name of article sources (e.g. newspapers)
+     * @return List of articles with full data from Infomedia
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public ArticleList searchArticlesByPublishDate(Instant publishDate, Duration publishDuration, Set<String> sources)
+            throws InfomediaConnectorException {
+        final Map<String, Article> articles = new LinkedHashMap<>();
+        final Set<String> truncated = new LinkedHashSet<>();
+        ArticleUsage articleUsage = null;
+        for (ArticleSearchResult reply : searchPages(publishDate, publishDuration, sources)) {
+            articleUsage = addArticleUsage(articleUsage, reply.getArticleUsage());
+            for (Article article : reply.getArticles()) {
+                articles.put(article.getArticleId(), article);
+                if (completeSearchArticle.test(article)) {
+                    truncated.remove(article.getArticleId());
+                } else {
+                    truncated.add(article.getArticleId());
+                }
+            }
+        }
+
+        if (!truncated.isEmpty()) {
+            final ArticleList fetched = getArticles(truncated);
+            articleUsage = addArticleUsage(articleUsage, fetched.getArticleUsage());
+            for (Article article : fetched.getArticles()) {
+                if (articles.replace(article.getArticleId(), article) != null) {
+                    truncated.remove(article.getArticleId());
+                }
+            }
+            if (!truncated.isEmpty()) {
+                LOGGER.warn("{} truncated search articles were not returned by fetch and are left out: {}",
+                        truncated.size(), truncated);
+                articles.keySet().removeAll(truncated);
+            }
+        }
+
+        final ArticleList result = new ArticleList();
+        result.setArticles(new ArrayList<>(articles.values()));
+        result.setArticleUsage(articleUsage);
+        return result;
+    }
+
+    /**
+     * This function is used for finding and fetching articles for sources limited by an interval,
+     * overlapping the search with the fetching of articles
+     * <p>
+     * The first page is searched on the calling thread, which then fetches the ids of each page in turn
+     * while later pages are searched on the connector executor, at most {@link #setPagingConcurrency(int)}
+     * at a time. No more than {@link #setPipelineCapacity(int)} pages are searched ahead of the page being
+     * fetched, further pages are only requested as the fetches catch up. Pagination caveats are the same as for {@link #searchArticleIdsByPublishDate(Instant, Duration, Set)}.
+     *
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param sources         Name of article sources (e.g. newspapers)
+     * @param consumer        Receives each article with full data from Infomedia
+     * @return Article usage reported by Infomedia for the fetched articles, null if none was reported
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public ArticleUsage harvestArticlesByPublishDate(Instant publishDate, Duration publishDuration, Set<String> sources,
+                                                     Consumer<Article> consumer)
+            throws InfomediaConnectorException {
+        final SearchRequestTemplate template = new SearchRequestTemplate(publishDate, publishDuration, sources, pageSize);
+        final ArticleSearchResult firstPage = searchPage(template, 0);
+        final Executor pageExecutor = new BoundedExecutor(executor, pagingConcurrency);
+        final Deque<CompletableFuture<ArticleSearchResult>> pages = new ArrayDeque<>();
+        pages.add(CompletableFuture.completedFuture(firstPage));
+        int nextStartIndex = this.pageSize;
+        int searchedPages = 1;
+
+        final Set<String> seen = new HashSet<>();
+        ArticleUsage articleUsage = null;
+        try {
+            while (!pages.isEmpty()) {
+                // Keep up to pipelineCapacity pages searched ahead of the page being fetched
+                while (pages.size() <= pipelineCapacity && nextStartIndex < firstPage.getNumFound()) {
+                    final int startIndex = nextStartIndex;
+                    pages.add(supplyAsync(() -> searchPage(template, startIndex), pageExecutor));
+                    nextStartIndex += this.pageSize;
+                    searchedPages++;
+                }
+                final Set<String> articleIds = new LinkedHashSet<>();
+                for (String articleId : join(pages.poll()).getArticleIds()) {
+                    if (seen.add(articleId)) {
+                        articleIds.add(articleId);
+                    }
+                }
+                if (!articleIds.isEmpty()) {
+                    final ArticleList articles = getArticles(articleIds);
+                    articleUsage = addArticleUsage(articleUsage, articles.getArticleUsage());
+                    articles.getArticles().forEach(consumer);
+                }
+            }
+        } catch (InfomediaConnectorException | RuntimeException e) {
+            // Pages not yet started are skipped
+            for (CompletableFuture<ArticleSearchResult> page : pages) {
+                page.cancel(false);
+            }
+            throw e;
+        }
+        metrics.searchPages(searchedPages);
+
+        return articleUsage;
+    }
+
+    /**
+     * This function is used for streaming articles with full data for sources limited by an interval
+     * to a reactive subscriber
+     * <p>
+     * Nothing is searched or fetched before a subscriber requests articles, and afterwards search pages and
+     * fetch batches are only requested while the subscriber has outstanding demand, so the memory used is
+     * bounded by a page of ids and a batch of articles rather than by the size of the result. Like
+     * {@link #searchAllArticleIdsByPublishDate(Instant, Duration, Set)} the result does not depend on
+     * pagination. Each subscription searches on its own and receives its signals on the connector executor.
+     * Failures are signalled as {@link InfomediaConnectorException} through {@code onError}.
+     *
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param sources         Name of article sources (e.g. newspapers)
+     * @return publisher of articles with full data from Infomedia
+     */
+    public Flow.Publisher<Article> publishArticlesByPublishDate(Instant publishDate, Duration publishDuration,
+                                                                Set<String> sources) {
+        InvariantUtil.checkNotNullOrThrow(publishDate, "publishDate");
+        InvariantUtil.checkNotNullOrThrow(publishDuration, "publishDuration");
+        InvariantUtil.checkNotNullOrThrow(sources, "sources");
+        return new ArticlePublisher(this, publishDate, publishDuration, sources);
+    }
+
+    /**
+     * Default search article predicate: an article is complete when its body text holds at least as
+     * many words as its reported word count. Search results carry shortened body texts, which fail this test.
+     *
+     * @param article article from a search page
+     * @return true if the article body text is not truncated
+     */
+    public static boolean hasCompleteBodyText(Article article) {
+        final String bodyText = article.getBodyText();
+        final Integer wordCount = article.getWordCount();
+        if (bodyText == null || wordCount == null) {
+            return false;
+        }
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < bodyText.length() && words < wordCount; i++) {
+            if (Character.isWhitespace(bodyText.charAt(i))) {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                words++;
+            }
+        }
+        return words >= wordCount;
+    }
+
+    /*
+     * A thing to note about pagination: The order of the articles seems to be in random order in each request.
+     * That means each page will grab the items from different lists thus not resulting in a complete list.
+     * For now we just ignore that problem as a pagesize of 300 seems to be fine. Use
+     * searchAllArticleIdsByPublishDate when completeness matters.
+     */
+    private List<ArticleSearchResult> searchPages(Instant publishDate, Duration publishDuration, Set<String> sources)
+            throws InfomediaConnectorException {
+        return join(searchPagesAsync(publishDate, publishDuration, sources, CALLING_THREAD));
+    }
+
+    /**
+     * Searches the first page on the given executor and, once it has reported the number of hits, the remaining
+     * pages. With a paging concurrency above 1 the remaining pages are searched on the connector executor,
+     * otherwise one after another on the given executor. No thread waits for another page, so the search
+     * may run from a task on the connector executor.
+     */
+    private CompletableFuture<List<ArticleSearchResult>> searchPagesAsync(Instant publishDate, Duration publishDuration,
+                                                                          Set<String> sources, Executor callExecutor) {
+        final SearchRequestTemplate template = new SearchRequestTemplate(publishDate, publishDuration, sources, pageSize);
+        return supplyAsync(() -> searchPage(template, 0), callExecutor).thenCompose(firstPage -> {
+            final List<CompletableFuture<ArticleSearchResult>> futures = new ArrayList<>();
+            futures.add(CompletableFuture.completedFuture(firstPage));
+            if (pagingConcurrency > 1) {
+                final Executor pageExecutor = new BoundedExecutor(executor, pagingConcurrency);
+                for (int count = this.pageSize; count < firstPage.getNumFound(); count += this.pageSize) {
+                    final int startIndex = count;
+                    futures.add(supplyAsync(() -> searchPage(template, startIndex), pageExecutor));
+                }
+            } else {
+                CompletableFuture<ArticleSearchResult> previous = futures.get(0);
+                for (int count = this.pageSize; count < firstPage.getNumFound(); count += this.pageSize) {
+                    final int startIndex = count;
+                    previous = previous.thenCompose(page -> supplyAsync(() -> searchPage(template, startIndex), callExecutor));
+                    futures.add(previous);
+                }
+            }
+            return allOf(futures).thenApply(pages -> {
+                metrics.searchPages(pages.size());
+                return pages;
+            });
+        });
+    }
+
+    ArticleSearchResult searchPage(SearchRequestTemplate template, int startIndex)
+            throws InfomediaConnectorException {
+        return postRequest(URL_INFOMEDIA_SEARCH, template.page(startIndex), ArticleSearchResult.class);
+    }
+
+    CompletableFuture<ArticleSearchResult> searchPageAsync(SearchRequestTemplate template, int startIndex) {
+        return supplyAsync(() -> searchPage(template, startIndex), executor);
+    }
+
+    private ArticleSearchResult searchPage(SearchRequestTemplate template, int startIndex, AtomicInteger pages)
+            throws InfomediaConnectorException {
+        pages.incrementAndGet();
+        return searchPage(template, startIndex);
+    }
+
+    static String iqlQuery(Instant publishDate, Duration publishDuration, Set<String> sources) {
+        final StringBuilder iqlQuery = new StringBuilder(64 + sources.size() * 8).append("sourcecode:[");
+        String separator = "";
+        for (String source : sources) {
+            iqlQuery.append(separator).append(source);
+            separator = ",";
+        }
+        return iqlQuery.append("] AND publishdate:[").append(publishDate)
+                .append("..").append(publishDate.plus(publishDuration)).append(']').toString();
+    }
+
+    /**
+     * This function is used for getting full article data from Informedia
+     *
+     * @param articleIds The list of article ids
+     * @return List of articles with full data from Infomedia
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public ArticleList getArticles(Set<String> articleIds) throws InfomediaConnectorException {
+        return join(getArticles(articleIds, articleListReader(), true, CALLING_THREAD));
+    }
+
+    /**
+     * This function is used for getting selected article fields from Infomedia
+     * <p>
+     * Only the given fields (and the article id) are bound from the response, the values of all other
+     * fields are skipped without being decoded. Articles found in the cache or store
+     * (see {@link #setArticleCache(ArticleCache)}) are returned with all their fields, while projected
+     * articles are never added to the cache or store.
+     *
+     * @param articleIds The list of article ids
+     * @param fields     The fields to read
+     * @return List of articles with the selected fields from Infomedia
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public ArticleList getProjectedArticles(Set<String> articleIds, Set<ArticleField> fields)
+            throws InfomediaConnectorException {
+        InvariantUtil.checkNotNullOrThrow(fields, "fields");
+        final ObjectMapper objectMapper = ProjectingArticleDeserializer.objectMapper(fields, compactArticles);
+        return join(getArticles(articleIds,
+                entity -> readEntity(entity, objectMapper, ArticleList.class), false, CALLING_THREAD));
+    }
+
+    private ResponseHandler<ArticleList> articleListReader() {
+        return entity -> readEntity(entity, articleMapper(), ArticleList.class);
+    }
+
+    /**
+     * Looks up and fetches articles on the given executor. Concurrent batches run on the connector executor
+     * and are combined as they complete, so no thread waits for another batch and the fetch may run from a
+     * task on the connector executor.
+     */
+    private CompletableFuture<ArticleList> getArticles(Set<String> articleIds, ResponseHandler<ArticleList> reader,
+                                                       boolean retain, Executor callExecutor) {
+        // Infomedia returns a different DTO when request is an empty list. To avoid that situation we simple return an
+        // empty list if the articleIds is empty
+        if (articleIds == null || articleIds.isEmpty()) {
+            ArticleList result = new ArticleList();
+            result.setArticles(new ArrayList<>());
+
+            return CompletableFuture.completedFuture(result);
+        }
+
+        final boolean singleFlight = retain && singleFlightFetches;
+        if (articleCache == null && articleStore == null && !singleFlight) {
+            return fetchArticleList(articleIds, reader, callExecutor);
+        }
+
+        return supplyAsync(() -> lookupArticles(articleIds), callExecutor).thenCompose(articles -> {
+            if (articles.size() == articleIds.size()) {
+                return CompletableFuture.completedFuture(articleList(articleIds, articles, null));
+            }
+            final Set<String> missing = new LinkedHashSet<>();
+            for (String articleId : articleIds) {
+                if (!articles.containsKey(articleId)) {
+                    missing.add(articleId);
+                }
+            }
+            // Already running on the thread the lookup was made on
+            final CompletableFuture<ArticleList> fetch = singleFlight
+                    ? fetchArticleListOnce(missing, reader, articles) : fetchArticleList(missing, reader, CALLING_THREAD);
+            return fetch.thenApply(fetched -> {
+                if (retain) {
+                    retainArticles(fetched.getArticles());
+                }
+                for (Article article : fetched.getArticles()) {
+                    articles.put(article.getArticleId(), article);
+                }
+                return articleList(articleIds, articles, fetched.getArticleUsage());
+            });
+        });
+    }
+
+    private static ArticleList articleList(Set<String> articleIds, Map<String, Article> articles,
+                                           ArticleUsage articleUsage) {
+        final List<Article> result = new ArrayList<>(articles.size());
+        for (String articleId : articleIds) {
+            final Article article = articles.get(articleId);
+            if (article != null) {
+                result.add(article);
+            }
+        }
+        final ArticleList articleList = new ArticleList();
+        articleList.setArticles(result);
+        articleList.setArticleUsage(articleUsage);
+        return articleList;
+    }
+
+    /**
+     * Fetches the articles not already in flight for another caller and then completes when the rest
+     * have arrived, which are added to the given map. Ids whose fetch failed for the other caller are
+     * fetched again.
+     *
+     * @return future of the articles fetched by this caller
+     */
+    private CompletableFuture<ArticleList> fetchArticleListOnce(Set<String> articleIds,
+                                                                ResponseHandler<ArticleList> reader,
+                                                                Map<String, Article> articles) {
+        final Map<String, CompletableFuture<Article>> owned = new LinkedHashMap<>();
+        final Map<String, CompletableFuture<Article>> joined = new LinkedHashMap<>();
+        for (String articleId : articleIds) {
+            final CompletableFuture<Article> future = new CompletableFuture<>();
+            final CompletableFuture<Article> inFlight = inFlightArticles.putIfAbsent(articleId, future);
+            if (inFlight == null) {
+                owned.put(articleId, future);
+            } else {
+                joined.put(articleId, inFlight);
+            }
+        }
+        if (!joined.isEmpty()) {
+            metrics.fetchIdsShared(joined.size());
+        }
+
+        final CompletableFuture<ArticleList> ownFetch = owned.isEmpty()
+                ? CompletableFuture.completedFuture(merge(Collections.emptyList()))
+                : fetchArticleList(owned.keySet(), reader, CALLING_THREAD);
+        // The own fetch is settled before waiting for other callers, which may in turn wait for it
+        return ownFetch.whenComplete((fetched, failure) -> {
+            if (failure != null) {
+                final Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure;
+                for (Map.Entry<String, CompletableFuture<Article>> entry : owned.entrySet()) {
+                    inFlightArticles.remove(entry.getKey(), entry.getValue());
+                    entry.getValue().completeExceptionally(cause);
+                }
+                return;
+            }
+            for (Article article : fetched.getArticles()) {
+                final CompletableFuture<Article> future = owned.get(article.getArticleId());
+                if (future != null) {
+                    future.complete(article);
+                }
+            }
+            for (Map.Entry<String, CompletableFuture<Article>> entry : owned.entrySet()) {
+                inFlightArticles.remove(entry.getKey(), entry.getValue());
+                entry.getValue().complete(null); // Not returned by Infomedia
+            }
+        }).thenCompose(fetched -> {
+            final List<CompletableFuture<Article>> settled = new ArrayList<>(joined.size());
+            for (CompletableFuture<Article> future : joined.values()) {
+                settled.add(future.handle((article, failure) -> article));
+            }
+            return allOf(settled).thenCompose(done -> {
+                final Set<String> failed = new LinkedHashSet<>();
+                for (Map.Entry<String, CompletableFuture<Article>> entry : joined.entrySet()) {
+                    if (entry.getValue().isCompletedExceptionally()) {
+                        failed.add(entry.getKey());
+                    } else {
+                        final Article article = entry.getValue().join();
+                        if (article != null) {
+                            articles.put(entry.getKey(), article);
+                        }
+                    }
+                }
+                if (failed.isEmpty()) {
+                    return CompletableFuture.completedFuture(fetched);
+                }
+                // Not run inline, the thread may be finishing the fetch of another caller
+                return fetchArticleList(failed, reader, executor)
+                        .thenApply(refetched -> merge(Arrays.asList(fetched, refetched)));
+            });
+        });
+    }
+
+    /**
+     * Fetches articles in batches. A single batch, and with a fetch concurrency of 1 each batch in turn, is
+     * fetched on the given executor, concurrent batches on the connector executor.
+     */
+    private CompletableFuture<ArticleList> fetchArticleList(Set<String> articleIds, ResponseHandler<ArticleList> reader,
+                                                            Executor callExecutor) {
+        if (articleIds.size() <= fetchBatchSize) {
+            return supplyAsync(() -> fetchArticles(articleIds, reader), callExecutor);
+        }
+
+        final List<List<String>> batches = partition(articleIds, fetchBatchSize);
+        final List<CompletableFuture<ArticleList>> futures = new ArrayList<>(batches.size());
+        if (fetchConcurrency > 1) {
+            final Executor fetchExecutor = new BoundedExecutor(executor, fetchConcurrency);
+            for (List<String> batch : batches) {
+                futures.add(supplyAsync(() -> fetchArticles(batch, reader), fetchExecutor));
+            }
+        } else {
+            CompletableFuture<ArticleList> previous = CompletableFuture.completedFuture(null);
+            for (List<String> batch : batches) {
+                previous = previous.thenCompose(reply -> supplyAsync(() -> fetchArticles(batch, reader), callExecutor));
+                futures.add(previous);
+            }
+        }
+
+        return allOf(futures).thenApply(InfomediaConnector::merge);
+    }
+
+    /**
+     * This function is used for getting full article data from Infomedia without holding
+     * the complete response in memory
+     * <p>
+     * Articles are parsed one at a time from the response stream and handed to the consumer
+     * as soon as they have been read. Batches (see {@link #setFetchBatchSize(int)}) are
+     * fetched one after another so that at most one response is being read at any time.
+     * With an article cache or store (see {@link #setArticleStore(DiskArticleStore)}) the articles
+     * of a batch are also kept until the batch has been read and then stored together.
+     *
+     * @param articleIds The list of article ids
+     * @param consumer   Receives each article with full data from Infomedia
+     * @return Article usage reported by Infomedia for the fetched articles, null if none was reported
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public ArticleUsage getArticles(Set<String> articleIds, Consumer<Article> consumer)
+            throws InfomediaConnectorException {
+        return getArticles(articleIds, articleMapper(), true, consumer);
+    }
+
+    /**
+     * This function is used for getting selected article fields from Infomedia without holding
+     * the complete response in memory
+     * <p>
+     * Works like {@link #getArticles(Set, Consumer)}, but only binds the given fields as described
+     * for {@link #getProjectedArticles(Set, Set)}.
+     *
+     * @param articleIds The list of article ids
+     * @param fields     The fields to read
+     * @param consumer   Receives each article with the selected fields from Infomedia
+     * @return Article usage reported by Infomedia for the fetched articles, null if none was reported
+     * @throws InfomediaConnectorException On failure to read result entity from response
+     */
+    public ArticleUsage getProjectedArticles(Set<String> articleIds, Set<ArticleField> fields,
+                                             Consumer<Article> consumer) throws InfomediaConnectorException {
+        InvariantUtil.checkNotNullOrThrow(fields, "fields");
+        return getArticles(articleIds, ProjectingArticleDeserializer.objectMapper(fields, compactArticles),
+                false, consumer);
+    }
+
+    private ArticleUsage getArticles(Set<String> articleIds, ObjectMapper objectMapper, boolean retain,
+                                     Consumer<Article> consumer) throws InfomediaConnectorException {
+        if (articleIds == null || articleIds.isEmpty()) {
+            return null;
+        }
+
+        Collection<String> missing = articleIds;
+        Consumer<Article> fetchConsumer = consumer;
+        List<Article> retained = null;
+        if (articleCache != null || articleStore != null) {
+            final Map<String, Article> cached = lookupArticles(articleIds);
+            missing = new ArrayList<>(articleIds.size() - cached.size());
+            for (String articleId : articleIds) {
+                final Article article = cached.get(articleId);
+                if (article != null) {
+                    consumer.accept(article);
+                } else {
+                    missing.add(articleId);
+                }
+            }
+            if (retain) {
+                // Stored once per batch rather than once per article
+                final List<Article> batchArticles = new ArrayList<>();
+                fetchConsumer = article -> {
+                    batchArticles.add(article);
+                    consumer.accept(article);
+                };
+                retained = batchArticles;
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return null;
+        }
+
+        ArticleUsage articleUsage = null;
+        for (List<String> batch : partition(missing, Math.min(fetchBatchSize, missing.size()))) {
+            final StreamingOutput body = fetchBody(batch);
+            final Consumer<Article> batchConsumer = fetchConsumer;
+            acquireArticles(batch.size());
+            metrics.fetchIds(batch.size());
+            final ArticleUsage batchUsage;
+            try {
+                batchUsage = postRequest(URL_INFOMEDIA_FETCH, body,
+                        entity -> ArticleStreamReader.read(entity, objectMapper, batchConsumer));
+            } finally {
+                if (retained != null && !retained.isEmpty()) {
+                    retainArticles(retained);
+                    retained.clear();
+                }
+            }
+            observeArticleUsage(batch.size(), batchUsage);
+            articleUsage = addArticleUsage(articleUsage, batchUsage);
+        }
+
+        return articleUsage;
+    }
+
+    /**
+     * Looks up articles in the cache and then in the store. Articles found in the store are added to the cache.
+     * Store failures are logged and treated as misses.
+     */
+    private Map<String, Article> lookupArticles(Set<String> articleIds) {
+        final ArticleCache cache = articleCache;
+        final DiskArticleStore store = articleStore;
+        final Map<String, Article> articles = cache == null ? new HashMap<>() : cache.getAll(articleIds);
+        if (store != null && articles.size() < articleIds.size()) {
+            final List<String> missing = new ArrayList<>(articleIds.size() - articles.size());
+            for (String articleId : articleIds) {
+                if (!articles.containsKey(articleId)) {
+                    missing.add(articleId);
+                }
+            }
+            try {
+                final Map<String, Article> stored = store.getAll(missing, articleMapper());
+                if (cache != null) {
+                    cache.putAll(stored.values());
+                }
+                articles.putAll(stored);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to read articles from store", e);
+            }
+        }
+        return articles;
+    }
+
+    /**
+     * Adds fetched articles to the cache and the store. Store failures are logged and otherwise ignored.
+     */
+    private void retainArticles(Collection<Article> articles) {
+        final ArticleCache cache = articleCache;
+        final DiskArticleStore store = articleStore;
+        if (cache != null) {
+            cache.putAll(articles);
+        }
+        if (store != null) {
+            try {
+                store.putAll(articles);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to write articles to store", e);
+            }
+        }
+    }
+
+    private ArticleList fetchArticles(Collection<String> articleIds, ResponseHandler<ArticleList> reader)
+            throws InfomediaConnectorException {
+        final StreamingOutput body = fetchBody(articleIds);
+
+        acquireArticles(articleIds.size());
+        metrics.fetchIds(articleIds.size());
+        final ArticleList reply = postRequest(URL_INFOMEDIA_FETCH, body, reader);
+        observeArticleUsage(articleIds.size(), reply.getArticleUsage());
+        return reply;
+    }
+
+    static StreamingOutput fetchBody(Collection<String> articleIds) {
+        return new ArticleIdsBody(articleIds);
+    }
+
+    private void acquireArticles(int count) throws InfomediaConnectorException {
+        final InfomediaRateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            limiter.acquireArticles(count);
+        }
+    }
+
+    private void observeArticleUsage(int acquired, ArticleUsage articleUsage) {
+        final InfomediaRateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            limiter.observe(acquired, articleUsage);
+        }
+    }
+
+    private static List<List<String>> partition(Collection<String> articleIds, int batchSize) {
+        final List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(batchSize);
+        for (String articleId : articleIds) {
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+            batch.add(articleId);
+        }
+        batches.add(batch);
+        return batches;
+    }
+
+    private static ArticleList merge(List<ArticleList> replies) {
+        final List<Article> articles = new ArrayList<>();
+        ArticleUsage articleUsage = null;
+        for (ArticleList reply : replies) {
+            if (reply.getArticles() != null) {
+                articles.addAll(reply.getArticles());
+            }
+            articleUsage = addArticleUsage(articleUsage, reply.getArticleUsage());
+        }
+
+        final ArticleList result = new ArticleList();
+        result.setArticles(articles);
+        result.setArticleUsage(articleUsage);
+        return result;
+    }
+
+    private static ArticleUsage addArticleUsage(ArticleUsage total, ArticleUsage articleUsage) {
+        if (articleUsage == null) {
+            return total;
+        }
+        if (total == null) {
+            total = new ArticleUsage();
+            total.setArticleUsageType(articleUsage.getArticleUsageType());
+        }
+        total.setArticleUsageCount(total.getArticleUsageCount() + articleUsage.getArticleUsageCount());
+        return total;
+    }
+
+    /**
+     * Asynchronous version of {@link #searchArticleIdsByPublishDate(Instant, Duration, String)}
+     *
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param source          Name of article source (e.g. newspapers)
+     * @return A future completing with a list of article ids, or exceptionally with
+     * an {@link InfomediaConnectorException} wrapped in a {@link CompletionException}
+     */
+    public CompletableFuture<Set<String>> searchArticleIdsByPublishDateAsync(Instant publishDate, Duration publishDuration,
+                                                                             String source) {
+        return searchArticleIdsByPublishDateAsync(publishDate, publishDuration,
+                new HashSet<>(Collections.singletonList(source)));
+    }
+
+    /**
+     * Asynchronous version of {@link #searchArticleIdsByPublishDate(Instant, Duration, Set)}
+     *
+     * @param publishDate     The date the article was published
+     * @param publishDuration The amount of time since publishDate to look for articles
+     * @param sources         Name of article sources (e.g. newspapers)
+     * @return A future completing with a list of article ids, or exceptionally with
+     * an {@link InfomediaConnectorException} wrapped in a {@link CompletionException}
+     */
+    public CompletableFuture<Set<String>> searchArticleIdsByPublishDateAsync(Instant publishDate, Duration publishDuration,
+                                                                             Set<String> sources) {
+        return searchArticleIds(publishDate, publishDuration, sources, executor);
+    }
+
+    /**
+     * Asynchronous version of {@link #getArticles(Set)}
+     *
+     * @param articleIds The list of article ids
+     * @return A future completing with the list of articles, or exceptionally with
+     * an {@link InfomediaConnectorException} wrapped in a {@link CompletionException}
+     */
+    public CompletableFuture<ArticleList> getArticlesAsync(Set<String> articleIds) {
+        return getArticles(articleIds, articleListReader(), true, executor);
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(InfomediaCall<T> call, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (InfomediaConnectorException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Completes when all the given futures have completed, with their results in order, or exceptionally
+     * if any of them failed
+     */
+    private static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            final List<T> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Waits for the given future and unwraps {@link InfomediaConnectorException} failures
+     */
+    private static <T> T join(CompletableFuture<T> future) throws InfomediaConnectorException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof InfomediaConnectorException) {
+                throw (InfomediaConnectorException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static ExecutorService newDefaultExecutor() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "infomedia-connector-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(DEFAULT_PARALLELISM, DEFAULT_PARALLELISM,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    private <T> T postRequest(String path, StreamingOutput data, Class<T> returnType) throws InfomediaConnectorException {
+        return postRequest(path, data, entity -> readEntity(entity, articleMapper(), returnType));
+    }
+
+    private <T> T postRequest(String path, StreamingOutput data, ResponseHandler<T> responseHandler)
+            throws InfomediaConnectorException {
+        final InfomediaMetrics metrics = this.metrics;
+        final Stopwatch stopwatch = new Stopwatch();
+        metrics.requestStarted(path);
+        boolean success = false;
+        try {
+            final String token = authenticate(); // Make sure we have a token
+            if (logEnabled.getAsBoolean()) {
+                logger.log("POST {} with data {}", path, data);
+            }
+            final HttpPost httpPost = new HttpPost(failSafeHttpClient)
+                    .withBaseUrl(baseUrl)
+                    .withPathElements(path)
+                    .withJsonData(data)
+                    .withHeader("Accept", "application/json")
+                    .withHeader("Content-type", "application/json")
+                    .withHeader("Authorization", "bearer " + token);
+            if (responseCompression) {
+                httpPost.withHeader("Accept-Encoding", ACCEPT_ENCODING);
+            }
+            final Response response = execute(path, httpPost);
+            ResponseEntityStream entity = null;
+            try {
+                assertResponseStatus(response, Response.Status.OK);
+                entity = ResponseEntityStream.of(response);
+                final T result = responseHandler.handle(entity);
+                success = true;
+                return result;
+            } catch (IOException e) {
+                throw new InfomediaConnectorException("unable to read infomedia response entity from " + path, e);
+            } finally {
+                if (entity != null) {
+                    recordResponseBytes(metrics, path, entity);
+                }
+                response.close();
+            }
+        } finally {
+            final long elapsedNanos = stopwatch.getElapsedTime(TimeUnit.NANOSECONDS);
+            metrics.requestCompleted(path, Duration.ofNanos(elapsedNanos), success);
+            if (logEnabled.getAsBoolean()) {
+                logger.log("POST {} took {} milliseconds", path, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            }
+        }
+    }
+
+    private static void recordResponseBytes(InfomediaMetrics metrics, String path, ResponseEntityStream entity) {
+        metrics.responseBytes(path, entity.getEncodedBytes());
+        if (entity.isEncoded()) {
+            metrics.responseDecoded(path, entity.getEncodedBytes(), entity.getDecodedBytes());
+        }
+    }
+
+    private static void recordResponseBytes(InfomediaMetrics metrics, String path, Response response) {
+        final int length = response.getLength();
+        if (length >= 0) {
+            metrics.responseBytes(path, length);
+        }
+    }
+
+    /**
+     * Executes a request, retrying failed attempts as decided by the retry strategy if one was given.
+     * Without a retry strategy retries are left to the policy of the {@link FailSafeHttpClient}.
+     */
+    private Response execute(String path, HttpPost httpPost) throws InfomediaConnectorException {
+        final InfomediaRateLimiter limiter = rateLimiter;
+        if (retryStrategy == null) {
+            if (limiter != null) {
+                limiter.acquireRequest();
+            }
+            return httpPost.execute();
+        }
+        retryStrategy.recordRequest(path);
+        for (int attempt = 1; ; attempt++) {
+            Response response = null;
+            RuntimeException failure = null;
+            if (limiter != null) {
+                limiter.acquireRequest();
+            }
+            try {
+                response = httpPost.execute();
+                if (response.getStatus() / 100 == 2) {
+                    return response;
+                }
+            } catch (ProcessingException e) {
+                failure = e;
+            }
+            final Duration delay = retryStrategy.retryDelay(path, attempt, response, failure);
+            if (delay == null) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+            LOGGER.info("Retrying POST {} in {} milliseconds after attempt {} failed with {}", path, delay.toMillis(),
+                    attempt, failure != null ? failure.toString() : response.getStatus());
+            metrics.retried(path, failure != null
+                    ? failure.getClass().getSimpleName() : String.valueOf(response.getStatus()));
+            if (response != null) {
+                response.close();
+            }
+            try {
+                Thread.sleep(delay.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InfomediaConnectorException("interrupted while waiting to retry POST " + path);
+            }
+        }
+    }
+
+    private ObjectMapper articleMapper() {
+        return compactArticles ? ArticleStreamReader.COMPACT_OBJECT_MAPPER : ArticleStreamReader.OBJECT_MAPPER;
+    }
+
+    private <T> T readResponseEntity(Response response, Class<T> type)
+            throws InfomediaConnectorException {
+        return checkEntity(response.readEntity(type), type);
+    }
+
+    private static <T> T readEntity(InputStream entity, ObjectMapper objectMapper, Class<T> type)
+            throws IOException, InfomediaConnectorException {
+        try (InputStream inputStream = entity) {
+            return checkEntity(objectMapper.readValue(inputStream, type), type);
+        }
+    }
+
+    private static <T> T checkEntity(T entity, Class<T> type) throws InfomediaConnectorException {
+        if (entity == null) {
+            throw new InfomediaConnectorException(
+                    String.format("infomedia service returned with null-valued %s entity",
+                            type.getName()));
+        }
+        return entity;
+    }
+
+    private void assertResponseStatus(Response response, Response.Status expectedStatus)
+            throws InfomediaConnectorUnexpectedStatusCodeException {
+        final Response.Status actualStatus =
+                Response.Status.fromStatusCode(response.getStatus());
+        if (actualStatus != expectedStatus) {
+            throw new InfomediaConnectorUnexpectedStatusCodeException(
+                    String.format("infomedia service returned with unexpected status code: %s",
+                            actualStatus),
+                    actualStatus.getStatusCode());
+        }
+    }
+
+    /**
+     * Immutable bearer token with its refresh and expiry times. Tokens are considered expired
+     * slightly before Infomedia expires them, so that requests in flight still carry a valid token.
+     */
+    private static class BearerToken {
+        private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(10);
+
+        private final String value;
+        private final Instant refreshAt;
+        private final Instant expiresAt;
+
+        private BearerToken(AuthToken authToken, Instant issued, double refreshFraction) {
+            final Duration lifetime = Duration.ofSeconds(authToken.getExpiresIn());
+            final Duration margin = lifetime.dividedBy(2).compareTo(EXPIRY_MARGIN) < 0
+                    ? lifetime.dividedBy(2) : EXPIRY_MARGIN;
+            this.value = authToken.getAccessToken();
+            this.expiresAt = issued.plus(lifetime).minus(margin);
+            this.refreshAt = issued.plusMillis((long) (lifetime.minus(margin).toMillis() * refreshFraction));
+        }
+    }
+
+    @FunctionalInterface
+    interface LogLevelMethod {
+        void log(String format, Object... objs);
+    }
+
+    @FunctionalInterface
+    interface ResponseHandler<T> {
+        T handle(InputStream entity) throws IOException, InfomediaConnectorException;
+    }
+
+    @FunctionalInterface
+    interface InfomediaCall<T> {
+        T call() throws InfomediaConnectorException;
     }
 
 }
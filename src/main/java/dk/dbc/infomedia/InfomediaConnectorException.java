@@ -10,4 +10,8 @@ public class InfomediaConnectorException extends Exception {
     public InfomediaConnectorException(String message) {
         super(message);
     }
+
+    public InfomediaConnectorException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
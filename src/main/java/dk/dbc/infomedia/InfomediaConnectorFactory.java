@@ -11,30 +11,58 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
+import jakarta.enterprise.inject.spi.BeanManager;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.client.Client;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
+
 @ApplicationScoped
 public class InfomediaConnectorFactory {
     private static final Logger LOGGER = LoggerFactory.getLogger(InfomediaConnectorFactory.class);
+    private static final InfomediaTransportConfig DEFAULT_TRANSPORT_CONFIG = new InfomediaTransportConfig();
+    private static final String METRIC_REGISTRY_CLASS = "org.eclipse.microprofile.metrics.MetricRegistry";
 
     public static InfomediaConnector create(String infomediaBaseUrl, String username, String password) {
-        final Client client = HttpClient.newClient(new ClientConfig().register(new JacksonFeature()));
+        final Client client = newClient(infomediaBaseUrl, DEFAULT_TRANSPORT_CONFIG);
         LOGGER.info("Creating InfomediaConnector for: {}", infomediaBaseUrl);
         return new InfomediaConnector(client, infomediaBaseUrl, username, password);
     }
 
     public static InfomediaConnector create(String infomediaBaseUrl, TimingLogLevel level, String username, String password) {
-        final Client client = HttpClient.newClient(new ClientConfig().register(new JacksonFeature()));
+        final Client client = newClient(infomediaBaseUrl, DEFAULT_TRANSPORT_CONFIG);
+        LOGGER.info("Creating InfomediaConnector for: {}", infomediaBaseUrl);
+        return new InfomediaConnector(client, infomediaBaseUrl, level, username, password);
+    }
+
+    public static InfomediaConnector create(String infomediaBaseUrl, TimingLogLevel level, String username, String password,
+                                            RetryStrategy retryStrategy) {
+        final Client client = newClient(infomediaBaseUrl, DEFAULT_TRANSPORT_CONFIG);
         LOGGER.info("Creating InfomediaConnector for: {}", infomediaBaseUrl);
+        return new InfomediaConnector(client, infomediaBaseUrl, level, username, password, retryStrategy);
+    }
+
+    public static InfomediaConnector create(String infomediaBaseUrl, TimingLogLevel level, String username, String password,
+                                            InfomediaTransportConfig transportConfig) {
+        final Client client = newClient(infomediaBaseUrl, transportConfig);
+        LOGGER.info("Creating InfomediaConnector for: {} with {}", infomediaBaseUrl, transportConfig);
         return new InfomediaConnector(client, infomediaBaseUrl, level, username, password);
     }
 
+    /**
+     * Returns new client using the connection pool shared by all clients for the same base URL and transport settings
+     *
+     * @param infomediaBaseUrl base URL for infomedia api endpoint
+     * @param transportConfig  transport settings
+     * @return web resources client, releasing its use of the pool when closed
+     */
+    public static Client newClient(String infomediaBaseUrl, InfomediaTransportConfig transportConfig) {
+        return HttpClient.newClient(InfomediaConnectionPool.newClientConfig(infomediaBaseUrl, transportConfig));
+    }
+
     @Inject
     @ConfigProperty(name = "INFOMEDIA_URL")
     private String infomediaBaseUrl;
@@ -51,11 +79,56 @@ public class InfomediaConnectorFactory {
     @ConfigProperty(name = "INFOMEDIA_PASSWORD")
     private String password;
 
+    @Inject
+    @ConfigProperty(name = "INFOMEDIA_MAX_CONNECTIONS_PER_ROUTE", defaultValue = "16")
+    private int maxConnectionsPerRoute;
+
+    @Inject
+    @ConfigProperty(name = "INFOMEDIA_CONNECT_TIMEOUT_MS", defaultValue = "10000")
+    private long connectTimeoutMillis;
+
+    @Inject
+    @ConfigProperty(name = "INFOMEDIA_READ_TIMEOUT_MS", defaultValue = "120000")
+    private long readTimeoutMillis;
+
+    @Inject
+    @ConfigProperty(name = "INFOMEDIA_IDLE_TIMEOUT_MS", defaultValue = "30000")
+    private long idleTimeoutMillis;
+
+    // The MetricRegistry is looked up through the bean manager, as an injection point of its type
+    // fails deployment where MicroProfile Metrics is not provided
+    @Inject
+    BeanManager beanManager;
+
     InfomediaConnector connector;
+    InfomediaTransportConfig transportConfig;
 
     @PostConstruct
     public void initializeConnector() {
-        connector = InfomediaConnectorFactory.create(infomediaBaseUrl, TimingLogLevel.valueOf(level), username, password);
+        transportConfig = new InfomediaTransportConfig();
+        transportConfig.setMaxConnections(Math.max(maxConnectionsPerRoute, transportConfig.getMaxConnections()));
+        transportConfig.setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+        transportConfig.setConnectTimeout(Duration.ofMillis(connectTimeoutMillis));
+        transportConfig.setReadTimeout(Duration.ofMillis(readTimeoutMillis));
+        transportConfig.setIdleTimeout(Duration.ofMillis(idleTimeoutMillis));
+        connector = InfomediaConnectorFactory.create(infomediaBaseUrl, TimingLogLevel.valueOf(level), username, password,
+                transportConfig);
+        if (beanManager != null && isMetricRegistryAvailable()) {
+            final InfomediaMetrics metrics = MicroProfileInfomediaMetrics.lookup(beanManager);
+            if (metrics != null) {
+                LOGGER.info("Registering InfomediaConnector metrics");
+                connector.setMetrics(metrics);
+            }
+        }
+    }
+
+    private static boolean isMetricRegistryAvailable() {
+        try {
+            Class.forName(METRIC_REGISTRY_CLASS, false, InfomediaConnectorFactory.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
     }
 
     @Produces
@@ -63,6 +136,14 @@ public class InfomediaConnectorFactory {
         return connector;
     }
 
+    /**
+     * @return the connection pool of the produced connector, exposing connection reuse and churn,
+     * or null once the connector has been closed
+     */
+    public InfomediaConnectionPool getConnectionPool() {
+        return InfomediaConnectionPool.lookup(infomediaBaseUrl, transportConfig);
+    }
+
     @PreDestroy
     public void tearDownConnector() {
         connector.close();
@@ -0,0 +1,102 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import java.time.Duration;
+
+/**
+ * Receives measurements of the requests made by an {@link InfomediaConnector}.
+ * <p>
+ * Endpoints are identified by their request path, i.e. "/oauth/token", "/api/v1/article/search"
+ * and "/api/v1/article/fetch". All methods default to doing nothing, so implementations only need
+ * to override the measurements they are interested in. Methods are called on the requesting threads
+ * and must be thread safe and cheap.
+ */
+public interface InfomediaMetrics {
+    /**
+     * Measurements are discarded
+     */
+    InfomediaMetrics NONE = new InfomediaMetrics() {};
+
+    /**
+     * Called when a request is started, before waiting for a token or a rate limiter
+     *
+     * @param path endpoint path
+     */
+    default void requestStarted(String path) {
+    }
+
+    /**
+     * Called when a request has completed, including any retries and reading of the response
+     *
+     * @param path     endpoint path
+     * @param duration time since the request was started
+     * @param success  false if the request ended with an exception
+     */
+    default void requestCompleted(String path, Duration duration, boolean success) {
+    }
+
+    /**
+     * Called with the size of a successful response. For search and fetch responses this is the number of
+     * bytes received, which for compressed responses is the compressed size. For token responses it is
+     * reported only if the size is announced by the service.
+     *
+     * @param path  endpoint path
+     * @param bytes response entity length
+     */
+    default void responseBytes(String path, long bytes) {
+    }
+
+    /**
+     * Called after a compressed response has been read
+     *
+     * @param path         endpoint path
+     * @param encodedBytes number of compressed bytes received
+     * @param decodedBytes number of bytes after decompression
+     */
+    default void responseDecoded(String path, long encodedBytes, long decodedBytes) {
+    }
+
+    /**
+     * Called whenever a failed attempt is about to be retried
+     *
+     * @param path  endpoint path
+     * @param cause HTTP status code or simple class name of the exception that failed the attempt
+     */
+    default void retried(String path, String cause) {
+    }
+
+    /**
+     * Called when all pages of a search have been requested
+     *
+     * @param pages number of pages requested
+     */
+    default void searchPages(int pages) {
+    }
+
+    /**
+     * Called before each fetch request
+     *
+     * @param articleIds number of article ids in the request
+     */
+    default void fetchIds(int articleIds) {
+    }
+
+    /**
+     * Called when a caller waits for article ids already being fetched for another caller
+     * (see {@link InfomediaConnector#setSingleFlightFetches(boolean)})
+     *
+     * @param articleIds number of article ids not requested again
+     */
+    default void fetchIdsShared(int articleIds) {
+    }
+
+    /**
+     * Called whenever a new bearer token has been obtained
+     */
+    default void tokenRefreshed() {
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side limiter of request rate and article quota.
+ * <p>
+ * Requests are limited by a token bucket refilled at a fixed number of requests per second.
+ * Fetched articles are limited by a token bucket holding the article quota of a period and refilled
+ * evenly over that period, so a quota is spent smoothly instead of in bursts.
+ * <p>
+ * The article bucket follows the ArticleUsageCount reported by Infomedia, which is the number of
+ * articles charged for the fetch it was returned by. Each fetch reserves the articles it asks for and is
+ * then settled against its own response: articles charged beyond those reserved are drained from the
+ * bucket, and articles reserved but not charged, e.g. ids unknown to Infomedia, are returned to it.
+ * One limiter may be shared by several connectors using the same account.
+ */
+public class InfomediaRateLimiter {
+    private final TokenBucket requests;
+    private final TokenBucket articles;
+
+    /**
+     * Returns new rate limiter
+     *
+     * @param requestsPerSecond sustained request rate
+     * @param requestBurst      number of requests allowed in a burst
+     * @param articlesPerPeriod article quota
+     * @param period            period over which the article quota is spent
+     */
+    public InfomediaRateLimiter(double requestsPerSecond, int requestBurst, long articlesPerPeriod, Duration period) {
+        this(requestsPerSecond, requestBurst, articlesPerPeriod, period, System::nanoTime);
+    }
+
+    InfomediaRateLimiter(double requestsPerSecond, int requestBurst, long articlesPerPeriod, Duration period,
+                         LongSupplier nanoClock) {
+        InvariantUtil.checkNotNullOrThrow(period, "period");
+        this.requests = new TokenBucket(requestBurst, requestsPerSecond, nanoClock);
+        this.articles = new TokenBucket(articlesPerPeriod,
+                articlesPerPeriod / (double) period.toNanos() * TimeUnit.SECONDS.toNanos(1), nanoClock);
+    }
+
+    /**
+     * Waits for permission to send a request
+     *
+     * @throws InfomediaConnectorException if interrupted while waiting
+     */
+    public void acquireRequest() throws InfomediaConnectorException {
+        await(requests.reserve(1));
+    }
+
+    /**
+     * Waits for permission to fetch a number of articles
+     *
+     * @param count number of articles about to be fetched
+     * @throws InfomediaConnectorException if interrupted while waiting
+     */
+    public void acquireArticles(int count) throws InfomediaConnectorException {
+        await(articles.reserve(count));
+    }
+
+    /**
+     * Settles the articles acquired for a fetch against the usage Infomedia reported for it
+     *
+     * @param acquired     number of articles acquired for the fetch
+     * @param articleUsage usage reported in the response of the fetch, ignored if null
+     */
+    public void observe(int acquired, ArticleUsage articleUsage) {
+        if (articleUsage == null) {
+            return;
+        }
+        final long unaccounted = articleUsage.getArticleUsageCount() - (long) acquired;
+        if (unaccounted > 0) {
+            articles.drain(unaccounted);
+        } else if (unaccounted < 0) {
+            articles.release(-unaccounted);
+        }
+    }
+
+    /**
+     * @return requests that can be sent right now without waiting, negative when in debt
+     */
+    public double getAvailableRequests() {
+        return requests.available();
+    }
+
+    /**
+     * @return articles that can be fetched right now without waiting, negative when in debt
+     */
+    public double getAvailableArticles() {
+        return articles.available();
+    }
+
+    private static void await(long nanos) throws InfomediaConnectorException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InfomediaConnectorException("interrupted while waiting for rate limiter");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InfomediaRateLimiter{" +
+                "availableRequests=" + getAvailableRequests() +
+                ", availableArticles=" + getAvailableArticles() +
+                '}';
+    }
+}
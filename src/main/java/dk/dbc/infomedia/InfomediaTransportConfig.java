@@ -0,0 +1,169 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Settings of the pooled HTTP transport used by connectors created through {@link InfomediaConnectorFactory}
+ * (see {@link InfomediaConnectionPool}).
+ */
+public class InfomediaTransportConfig {
+    private int maxConnections = 64;
+    private int maxConnectionsPerRoute = 16;
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration readTimeout = Duration.ofMinutes(2);
+    private Duration connectionRequestTimeout = Duration.ofSeconds(30);
+    private Duration idleTimeout = Duration.ofSeconds(30);
+    private Duration validateAfterInactivity = Duration.ofSeconds(2);
+
+    public InfomediaTransportConfig() {
+    }
+
+    InfomediaTransportConfig(InfomediaTransportConfig other) {
+        this.maxConnections = other.maxConnections;
+        this.maxConnectionsPerRoute = other.maxConnectionsPerRoute;
+        this.connectTimeout = other.connectTimeout;
+        this.readTimeout = other.readTimeout;
+        this.connectionRequestTimeout = other.connectionRequestTimeout;
+        this.idleTimeout = other.idleTimeout;
+        this.validateAfterInactivity = other.validateAfterInactivity;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections maximum number of open connections in the pool
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be at least 1");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    /**
+     * Should be at least the number of concurrent requests of the connectors sharing the pool
+     * (see {@link InfomediaConnector#setFetchConcurrency(int)})
+     *
+     * @param maxConnectionsPerRoute maximum number of open connections to one host
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerRoute must be at least 1");
+        }
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * @param connectTimeout time allowed for establishing a connection, including the TLS handshake
+     */
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = checkTimeout(connectTimeout, "connectTimeout");
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * @param readTimeout time allowed between two reads of a response
+     */
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = checkTimeout(readTimeout, "readTimeout");
+    }
+
+    public Duration getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * @param connectionRequestTimeout time allowed for waiting on a connection when the pool is exhausted
+     */
+    public void setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+        this.connectionRequestTimeout = checkTimeout(connectionRequestTimeout, "connectionRequestTimeout");
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout time after which unused connections are closed
+     */
+    public void setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = checkTimeout(idleTimeout, "idleTimeout");
+    }
+
+    public Duration getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * @param validateAfterInactivity time after which an unused connection is checked to be open before it is reused
+     */
+    public void setValidateAfterInactivity(Duration validateAfterInactivity) {
+        this.validateAfterInactivity = checkTimeout(validateAfterInactivity, "validateAfterInactivity");
+    }
+
+    private static Duration checkTimeout(Duration timeout, String name) {
+        InvariantUtil.checkNotNullOrThrow(timeout, name);
+        if (timeout.isNegative() || timeout.isZero() || timeout.toMillis() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(name + " must be positive and at most " + Integer.MAX_VALUE + " ms");
+        }
+        return timeout;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final InfomediaTransportConfig that = (InfomediaTransportConfig) o;
+        return maxConnections == that.maxConnections
+                && maxConnectionsPerRoute == that.maxConnectionsPerRoute
+                && connectTimeout.equals(that.connectTimeout)
+                && readTimeout.equals(that.readTimeout)
+                && connectionRequestTimeout.equals(that.connectionRequestTimeout)
+                && idleTimeout.equals(that.idleTimeout)
+                && validateAfterInactivity.equals(that.validateAfterInactivity);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxConnections, maxConnectionsPerRoute, connectTimeout, readTimeout,
+                connectionRequestTimeout, idleTimeout, validateAfterInactivity);
+    }
+
+    @Override
+    public String toString() {
+        return "InfomediaTransportConfig{" +
+                "maxConnections=" + maxConnections +
+                ", maxConnectionsPerRoute=" + maxConnectionsPerRoute +
+                ", connectTimeout=" + connectTimeout +
+                ", readTimeout=" + readTimeout +
+                ", connectionRequestTimeout=" + connectionRequestTimeout +
+                ", idleTimeout=" + idleTimeout +
+                ", validateAfterInactivity=" + validateAfterInactivity +
+                '}';
+    }
+}
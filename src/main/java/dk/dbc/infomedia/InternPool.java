@@ -0,0 +1,49 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded pool of canonical instances of frequently repeated values.
+ * <p>
+ * Once the pool is full new values are returned as they are, so unexpectedly diverse
+ * input can not make the pool grow without limit.
+ */
+class InternPool {
+    private final int maxSize;
+    private final ConcurrentHashMap<Object, Object> values = new ConcurrentHashMap<>();
+
+    InternPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    String intern(String value) {
+        return value == null ? null : intern(value, value);
+    }
+
+    /**
+     * @param key   identifies equal values
+     * @param value value to canonicalize
+     * @return the pooled value for the key, or value itself if none is pooled
+     */
+    @SuppressWarnings("unchecked")
+    <T> T intern(Object key, T value) {
+        final Object pooled = values.get(key);
+        if (pooled != null) {
+            return (T) pooled;
+        }
+        if (values.size() >= maxSize) {
+            return value;
+        }
+        final Object previous = values.putIfAbsent(key, value);
+        return previous == null ? value : (T) previous;
+    }
+
+    int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+import jakarta.enterprise.inject.Instance;
+import jakarta.enterprise.inject.spi.BeanManager;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+
+import java.time.Duration;
+
+/**
+ * {@link InfomediaMetrics} recording to a MicroProfile Metrics registry.
+ * <p>
+ * Request metrics are tagged with endpoint "token", "search" or "fetch":
+ * <ul>
+ *     <li>infomedia_request_duration - timer of completed requests</li>
+ *     <li>infomedia_request_failures - counter of requests ending with an exception</li>
+ *     <li>infomedia_requests_in_flight - concurrent gauge of started requests</li>
+ *     <li>infomedia_response_bytes - histogram of response sizes as received</li>
+ *     <li>infomedia_response_decoded_bytes - histogram of compressed response sizes after decompression</li>
+ *     <li>infomedia_response_compressed_percent - histogram of compressed response sizes in percent of their
+ *     decompressed sizes</li>
+ *     <li>infomedia_retries - counter of retried attempts, additionally tagged with the cause</li>
+ *     <li>infomedia_search_pages - histogram of pages per search</li>
+ *     <li>infomedia_fetch_ids - histogram of article ids per fetch</li>
+ *     <li>infomedia_fetch_ids_shared - counter of article ids taken from fetches made for other callers</li>
+ *     <li>infomedia_token_refreshes - counter of obtained bearer tokens</li>
+ * </ul>
+ */
+public class MicroProfileInfomediaMetrics implements InfomediaMetrics {
+    private final MetricRegistry registry;
+
+    public MicroProfileInfomediaMetrics(MetricRegistry registry) {
+        this.registry = InvariantUtil.checkNotNullOrThrow(registry, "registry");
+    }
+
+    /**
+     * Returns metrics recording to the application registry provided by the container. Callers must check
+     * that the MicroProfile Metrics API is on the class path before calling.
+     *
+     * @param beanManager bean manager of the container
+     * @return metrics, or null if the container provides no registry
+     */
+    static InfomediaMetrics lookup(BeanManager beanManager) {
+        final Instance<MetricRegistry> registry = beanManager.createInstance().select(MetricRegistry.class);
+        return registry.isResolvable() ? new MicroProfileInfomediaMetrics(registry.get()) : null;
+    }
+
+    @Override
+    public void requestStarted(String path) {
+        registry.concurrentGauge("infomedia_requests_in_flight", endpoint(path)).inc();
+    }
+
+    @Override
+    public void requestCompleted(String path, Duration duration, boolean success) {
+        final Tag endpoint = endpoint(path);
+        registry.concurrentGauge("infomedia_requests_in_flight", endpoint).dec();
+        registry.timer("infomedia_request_duration", endpoint).update(duration);
+        if (!success) {
+            registry.counter("infomedia_request_failures", endpoint).inc();
+        }
+    }
+
+    @Override
+    public void responseBytes(String path, long bytes) {
+        registry.histogram("infomedia_response_bytes", endpoint(path)).update(bytes);
+    }
+
+    @Override
+    public void responseDecoded(String path, long encodedBytes, long decodedBytes) {
+        registry.histogram("infomedia_response_decoded_bytes", endpoint(path)).update(decodedBytes);
+        if (decodedBytes > 0) {
+            registry.histogram("infomedia_response_compressed_percent", endpoint(path))
+                    .update(encodedBytes * 100 / decodedBytes);
+        }
+    }
+
+    @Override
+    public void retried(String path, String cause) {
+        registry.counter("infomedia_retries", endpoint(path), new Tag("cause", cause)).inc();
+    }
+
+    @Override
+    public void searchPages(int pages) {
+        registry.histogram("infomedia_search_pages").update(pages);
+    }
+
+    @Override
+    public void fetchIds(int articleIds) {
+        registry.histogram("infomedia_fetch_ids").update(articleIds);
+    }
+
+    @Override
+    public void fetchIdsShared(int articleIds) {
+        registry.counter("infomedia_fetch_ids_shared").inc(articleIds);
+    }
+
+    @Override
+    public void tokenRefreshed() {
+        registry.counter("infomedia_token_refreshes").inc();
+    }
+
+    private static Tag endpoint(String path) {
+        switch (path) {
+            case InfomediaConnector.URL_OAUTH_TOKEN:
+                return new Tag("endpoint", "token");
+            case InfomediaConnector.URL_INFOMEDIA_SEARCH:
+                return new Tag("endpoint", "search");
+            case InfomediaConnector.URL_INFOMEDIA_FETCH:
+                return new Tag("endpoint", "fetch");
+            default:
+                return new Tag("endpoint", path);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds only selected fields of articles.
+ * <p>
+ * Unselected fields are skipped at the token level, so their values are never decoded into strings.
+ * The article id is always bound, since articles are matched to requested ids by it.
+ */
+class ProjectingArticleDeserializer extends StdDeserializer<Article> {
+    private static final Map<Set<ArticleField>, ObjectMapper> MAPPERS = new ConcurrentHashMap<>();
+    private static final Map<Set<ArticleField>, ObjectMapper> COMPACT_MAPPERS = new ConcurrentHashMap<>();
+
+    private final EnumSet<ArticleField> fields;
+    private final boolean compact;
+
+    ProjectingArticleDeserializer(Set<ArticleField> fields, boolean compact) {
+        super(Article.class);
+        this.fields = fields.isEmpty() ? EnumSet.noneOf(ArticleField.class) : EnumSet.copyOf(fields);
+        this.fields.add(ArticleField.ARTICLE_ID);
+        this.compact = compact;
+    }
+
+    /**
+     * @param fields  fields to bind
+     * @param compact true to bind {@link CompactArticle} instances
+     * @return mapper binding articles with the projection, shared by all callers using the same projection
+     */
+    static ObjectMapper objectMapper(Set<ArticleField> fields, boolean compact) {
+        final EnumSet<ArticleField> key = fields.isEmpty() ? EnumSet.noneOf(ArticleField.class) : EnumSet.copyOf(fields);
+        return (compact ? COMPACT_MAPPERS : MAPPERS).computeIfAbsent(key,
+                projection -> ArticleStreamReader.OBJECT_MAPPER.copy().registerModule(new SimpleModule()
+                        .addDeserializer(Article.class, new ProjectingArticleDeserializer(projection, compact))));
+    }
+
+    @Override
+    public Article deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        final Article article = compact ? new CompactArticle() : new Article();
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            final ArticleField field = ArticleField.forJsonName(parser.getCurrentName());
+            parser.nextToken();
+            if (field == null || !fields.contains(field)) {
+                parser.skipChildren();
+            } else {
+                bind(field, parser, context, article);
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonParseException(parser, "Expected end of article object");
+        }
+        return article;
+    }
+
+    private static void bind(ArticleField field, JsonParser parser, DeserializationContext context, Article article)
+            throws IOException {
+        switch (field) {
+            case ARTICLE_ID:
+                article.setArticleId(parser.getValueAsString());
+                break;
+            case ARTICLE_URL:
+                article.setArticleUrl(parser.getValueAsString());
+                break;
+            case HEADING:
+                article.setHeading(parser.getValueAsString());
+                break;
+            case SUB_HEADING:
+                article.setSubHeading(parser.getValueAsString());
+                break;
+            case LEAD:
+                article.setLead(parser.getValueAsString());
+                break;
+            case PARAGRAPH:
+                article.setParagraph(parser.getValueAsString());
+                break;
+            case BODY_TEXT:
+                article.setBodyText(parser.getValueAsString());
+                break;
+            case CAPTIONS:
+                article.setCaptions(readStrings(parser));
+                break;
+            case AUTHORS:
+                article.setAuthors(readStrings(parser));
+                break;
+            case PAGE_IDS:
+                article.setPageIds(readStrings(parser));
+                break;
+            case PUBLISH_DATE:
+                article.setPublishDate(parser.getValueAsString());
+                break;
+            case SOURCE:
+                article.setSource(parser.getValueAsString());
+                break;
+            case SECTION:
+                article.setSection(parser.currentToken() == JsonToken.VALUE_NULL
+                        ? null : context.readValue(parser, Section.class));
+                break;
+            case WORD_COUNT:
+                article.setWordCount(parser.currentToken() == JsonToken.VALUE_NULL
+                        ? null : parser.getValueAsInt());
+                break;
+            default:
+                parser.skipChildren();
+        }
+    }
+
+    private static List<String> readStrings(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        final List<String> values = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new JsonParseException(parser, "Unexpected end of array");
+            }
+            values.add(parser.getValueAsString());
+            parser.skipChildren();
+        }
+        return values;
+    }
+}
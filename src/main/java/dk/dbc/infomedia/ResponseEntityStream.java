@@ -0,0 +1,193 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import jakarta.ws.rs.core.Response;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Response entity decoded according to its Content-Encoding (gzip, deflate or identity) while it is being read.
+ * <p>
+ * Decoding streams straight from the connection, so compressed responses are never held in memory.
+ * Both the bytes received and the bytes decoded are counted.
+ */
+class ResponseEntityStream extends InputStream {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final CountingInputStream encoded;
+    private final InputStream decoded;
+    private final String contentEncoding;
+    private long decodedBytes;
+
+    private ResponseEntityStream(CountingInputStream encoded, InputStream decoded, String contentEncoding) {
+        this.encoded = encoded;
+        this.decoded = decoded;
+        this.contentEncoding = contentEncoding;
+    }
+
+    static ResponseEntityStream of(Response response) throws IOException {
+        final String header = response.getHeaderString("Content-Encoding");
+        return of(response.readEntity(InputStream.class), header);
+    }
+
+    static ResponseEntityStream of(InputStream inputStream, String contentEncoding) throws IOException {
+        final CountingInputStream encoded = new CountingInputStream(inputStream);
+        final String encoding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "":
+            case "identity":
+                return new ResponseEntityStream(encoded, encoded, null);
+            case "gzip":
+            case "x-gzip":
+                return new ResponseEntityStream(encoded, new GZIPInputStream(encoded, BUFFER_SIZE), encoding);
+            case "deflate":
+                return new ResponseEntityStream(encoded, inflating(encoded), encoding);
+            default:
+                encoded.close();
+                throw new IOException("Unsupported response content encoding: " + contentEncoding);
+        }
+    }
+
+    /**
+     * HTTP deflate is zlib wrapped, but some servers send raw deflate data, so the zlib header is checked first
+     */
+    private static InputStream inflating(InputStream inputStream) throws IOException {
+        final PushbackInputStream pushback = new PushbackInputStream(inputStream, 2);
+        final int cmf = pushback.read();
+        final int flg = cmf < 0 ? -1 : pushback.read();
+        if (flg >= 0) {
+            pushback.unread(flg);
+        }
+        if (cmf >= 0) {
+            pushback.unread(cmf);
+        }
+        final boolean zlib = flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlib);
+        return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    inflater.end();
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return true if the entity was compressed
+     */
+    boolean isEncoded() {
+        return contentEncoding != null;
+    }
+
+    /**
+     * @return number of bytes read from the response so far
+     */
+    long getEncodedBytes() {
+        return encoded.count;
+    }
+
+    /**
+     * @return number of bytes decoded so far
+     */
+    long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = decoded.read();
+        if (b >= 0) {
+            decodedBytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        final int read = decoded.read(bytes, offset, length);
+        if (read > 0) {
+            decodedBytes += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long skipped = decoded.skip(n);
+        decodedBytes += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return decoded.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        decoded.close();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseEntityStream{" +
+                "contentEncoding='" + contentEncoding + '\'' +
+                ", encodedBytes=" + encoded.count +
+                ", decodedBytes=" + decodedBytes +
+                '}';
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            final int read = in.read(bytes, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import jakarta.ws.rs.core.Response;
+
+import java.time.Duration;
+
+/**
+ * Decides whether and when failed Infomedia requests are retried.
+ * <p>
+ * Implementations are shared by all threads using a connector and must be thread safe.
+ */
+public interface RetryStrategy {
+    /**
+     * Called once for every request before its first attempt
+     *
+     * @param path request path, e.g. /api/v1/article/fetch
+     */
+    default void recordRequest(String path) {
+    }
+
+    /**
+     * Decides whether a failed attempt is retried
+     *
+     * @param path     request path, e.g. /api/v1/article/fetch
+     * @param attempt  number of attempts made so far, starting at 1
+     * @param response response of the failed attempt, null if the attempt failed with an exception
+     * @param failure  exception of the failed attempt, null if a response was received
+     * @return delay before the next attempt, or null to give up
+     */
+    Duration retryDelay(String path, int attempt, Response response, RuntimeException failure);
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+
+/**
+ * Pre-serialized {@link ArticleSearchRequest} for all pages of a single search.
+ * <p>
+ * The query, search range and page size are the same for every page, so they are serialized once.
+ * Each page body then only writes the serialized parts around its start index.
+ */
+class SearchRequestTemplate {
+    private final String iqlQuery;
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    SearchRequestTemplate(Instant publishDate, Duration publishDuration, Set<String> sources, int pageSize) {
+        this.iqlQuery = InfomediaConnector.iqlQuery(publishDate, publishDuration, sources);
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(128 + iqlQuery.length());
+        try (JsonGenerator generator = ArticleStreamReader.OBJECT_MAPPER.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeStringField("IqlQuery", iqlQuery);
+            generator.writeObjectField("SearchRange", new SearchRange(publishDate, publishDate.plus(publishDuration)));
+            generator.writeFieldName("PagingParameter");
+            generator.writeStartObject();
+            generator.writeFieldName("StartIndex");
+            generator.flush();
+            // The generator only writes the separating colon together with the field value
+            buffer.write(':');
+            this.prefix = buffer.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.suffix = (",\"Pagesize\":" + pageSize + "}}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param startIndex index of the first article of the page
+     * @return request body for the page
+     */
+    StreamingOutput page(int startIndex) {
+        return new Page(startIndex);
+    }
+
+    private class Page implements StreamingOutput {
+        private final int startIndex;
+
+        private Page(int startIndex) {
+            this.startIndex = startIndex;
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException {
+            outputStream.write(prefix);
+            outputStream.write(Integer.toString(startIndex).getBytes(StandardCharsets.US_ASCII));
+            outputStream.write(suffix);
+        }
+
+        @Override
+        public String toString() {
+            return iqlQuery + " from " + startIndex;
+        }
+    }
+}
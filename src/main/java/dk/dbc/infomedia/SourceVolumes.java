@@ -0,0 +1,170 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import dk.dbc.invariant.InvariantUtil;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Article volume per source, used to group sources into searches fitting a single page
+ * (see {@link InfomediaConnector#setSourceVolumes(SourceVolumes)}).
+ * <p>
+ * Volumes are kept as articles per second and learned from the hit counts of the searches made: a search
+ * for one source updates its volume directly, a search for a group of sources scales the volumes of its
+ * members by how far off their sum was. Updates are smoothed, so a single unusual day only moves the
+ * volume half way. Volumes may be seeded with {@link #setVolume(String, long, Duration)}, e.g. from a
+ * previous run. One instance may be shared by several connectors.
+ */
+public class SourceVolumes {
+    private static final double SMOOTHING = 0.5;
+    private static final double PAGE_FILL = 0.75;
+
+    private final Map<String, Double> articlesPerSecond = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the volume of a source
+     *
+     * @param source   name of article source
+     * @param articles number of articles published by the source in the period
+     * @param period   period of time
+     */
+    public void setVolume(String source, long articles, Duration period) {
+        InvariantUtil.checkNotNullOrThrow(source, "source");
+        if (articles < 0) {
+            throw new IllegalArgumentException("articles must not be negative");
+        }
+        articlesPerSecond.put(source, articles / seconds(InvariantUtil.checkNotNullOrThrow(period, "period")));
+    }
+
+    /**
+     * @param source   name of article source
+     * @param duration length of a search interval
+     * @return expected number of articles from the source in an interval of the given length, or -1 if unknown
+     */
+    public double getExpectedArticles(String source, Duration duration) {
+        final Double rate = articlesPerSecond.get(source);
+        return rate == null ? -1 : rate * seconds(duration);
+    }
+
+    /**
+     * Groups sources so that the expected hits of each group fill at most three quarters of a page.
+     * Sources expected to fill a page on their own get a group each. Sources of unknown volume are put
+     * in one group of their own, which is split by the search should it not fit in a page.
+     *
+     * @param sources  names of article sources
+     * @param duration length of the search interval
+     * @param pageSize search page size
+     * @return groups of sources
+     */
+    List<Set<String>> group(Set<String> sources, Duration duration, int pageSize) {
+        final double capacity = pageSize * PAGE_FILL;
+        final List<Set<String>> groups = new ArrayList<>();
+        final List<Double> groupVolumes = new ArrayList<>();
+        final List<String> known = new ArrayList<>();
+        final Set<String> unknown = new LinkedHashSet<>();
+        for (String source : sources) {
+            if (getExpectedArticles(source, duration) < 0) {
+                unknown.add(source);
+            } else {
+                known.add(source);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            groups.add(unknown);
+            groupVolumes.add(capacity);
+        }
+        known.sort(Comparator.comparingDouble((String source) -> getExpectedArticles(source, duration)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        // First fit decreasing
+        for (String source : known) {
+            final double volume = getExpectedArticles(source, duration);
+            int fit = -1;
+            for (int i = 0; i < groups.size() && fit < 0; i++) {
+                if (groupVolumes.get(i) + volume <= capacity) {
+                    fit = i;
+                }
+            }
+            if (fit < 0) {
+                final Set<String> group = new LinkedHashSet<>();
+                group.add(source);
+                groups.add(group);
+                groupVolumes.add(volume);
+            } else {
+                groups.get(fit).add(source);
+                groupVolumes.set(fit, groupVolumes.get(fit) + volume);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Learns from the number of hits of a search
+     *
+     * @param sources  names of the searched sources
+     * @param duration length of the search interval
+     * @param hits     number of articles found
+     */
+    void observe(Collection<String> sources, Duration duration, long hits) {
+        final double seconds = seconds(duration);
+        double expected = 0;
+        final List<String> unknown = new ArrayList<>();
+        for (String source : sources) {
+            final double volume = getExpectedArticles(source, duration);
+            if (volume < 0) {
+                unknown.add(source);
+            } else {
+                expected += volume;
+            }
+        }
+        if (!unknown.isEmpty()) {
+            // Hits not accounted for by known sources are attributed evenly to the unknown ones
+            final double rate = Math.max(hits - expected, 0) / unknown.size() / seconds;
+            for (String source : unknown) {
+                articlesPerSecond.putIfAbsent(source, rate);
+            }
+            return;
+        }
+        if (expected <= 0) {
+            for (String source : sources) {
+                smooth(source, hits / (double) sources.size() / seconds);
+            }
+            return;
+        }
+        final double factor = hits / expected;
+        for (String source : sources) {
+            final Double rate = articlesPerSecond.get(source);
+            if (rate != null) {
+                smooth(source, rate * factor);
+            }
+        }
+    }
+
+    private void smooth(String source, double observedRate) {
+        articlesPerSecond.merge(source, observedRate,
+                (previous, observed) -> previous + SMOOTHING * (observed - previous));
+    }
+
+    private static double seconds(Duration duration) {
+        // Search intervals include both ends
+        return Math.max(duration.toMillis() / 1000.0, 1);
+    }
+
+    @Override
+    public String toString() {
+        return "SourceVolumes{" +
+                "articlesPerSecond=" + articlesPerSecond +
+                '}';
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled continuously at a fixed rate up to its capacity.
+ * <p>
+ * Permits are reserved up front and the caller then waits until the bucket is out of debt,
+ * so requests for more permits than the capacity are served too, just later.
+ */
+class TokenBucket {
+    private final double capacity;
+    private final double permitsPerNano;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double capacity, double permitsPerSecond, LongSupplier nanoClock) {
+        if (capacity <= 0 || permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("capacity and permitsPerSecond must be positive");
+        }
+        this.capacity = capacity;
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Reserves permits
+     *
+     * @param permits number of permits to take
+     * @return nanoseconds the caller must wait before using the permits
+     */
+    long reserve(double permits) {
+        lock.lock();
+        try {
+            refill();
+            tokens -= permits;
+            return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes permits consumed outside of this bucket, e.g. by other clients sharing a quota
+     *
+     * @param permits number of permits to remove
+     */
+    void drain(double permits) {
+        lock.lock();
+        try {
+            refill();
+            tokens -= permits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns permits reserved but not used, up to the capacity of the bucket
+     *
+     * @param permits number of permits to return
+     */
+    void release(double permits) {
+        lock.lock();
+        try {
+            refill();
+            tokens = Math.min(capacity, tokens + permits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double available() {
+        lock.lock();
+        try {
+            refill();
+            return tokens;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        final long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads on JDKs providing them.
+ * <p>
+ * The connector is compiled for Java 11, so the virtual thread API is looked up by reflection
+ * once and the executor is only available when running on Java 21 or later.
+ */
+final class VirtualThreads {
+    private static final Method OF_VIRTUAL = lookup(Thread.class, "ofVirtual");
+    private static final Method BUILDER_NAME = lookup("java.lang.Thread$Builder", "name", String.class, long.class);
+    private static final Method BUILDER_FACTORY = lookup("java.lang.Thread$Builder", "factory");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = lookup(Executors.class, "newThreadPerTaskExecutor",
+            ThreadFactory.class);
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running JDK provides virtual threads
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_FACTORY != null
+                && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns executor starting a new virtual thread for each task
+     *
+     * @param namePrefix prefix of thread names, followed by a sequence number
+     * @return executor, or null if virtual threads are not supported
+     */
+    static ExecutorService newExecutor(String namePrefix) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            final Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+            final ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            // Preview builds of the API may refuse to create virtual threads
+            return null;
+        }
+    }
+
+    private static Method lookup(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return lookup(Class.forName(className), name, parameterTypes);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static Method lookup(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ArticleCacheTest {
+
+    @Test
+    void getAllCountsHitsAndMisses() {
+        final ArticleCache cache = new ArticleCache(10);
+        cache.putAll(Arrays.asList(article("a", "x"), article("b", "y")));
+
+        assertThat(cache.getAll(Arrays.asList("a", "b", "c")).keySet(), is(new HashSet<>(Arrays.asList("a", "b"))));
+        assertThat(cache.getHitCount(), is(2L));
+        assertThat(cache.getMissCount(), is(1L));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedByWeight() {
+        final ArticleCache cache = new ArticleCache(10, ArticleCache::bodyTextWeight, null);
+        cache.putAll(Arrays.asList(article("a", "1234"), article("b", "1234")));
+        cache.getAll(Collections.singletonList("a"));
+        cache.putAll(Collections.singletonList(article("c", "1234")));
+
+        assertThat(cache.getAll(Arrays.asList("a", "b", "c")).keySet(), is(new HashSet<>(Arrays.asList("a", "c"))));
+        assertThat(cache.getWeight(), is(10L));
+        assertThat(cache.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    void expiresAfterTimeToLive() {
+        final AtomicLong clock = new AtomicLong();
+        final ArticleCache cache = new ArticleCache(10, article -> 1, Duration.ofNanos(100), clock::get);
+        cache.putAll(Collections.singletonList(article("a", "x")));
+        clock.set(99);
+        assertThat(cache.getAll(Collections.singletonList("a")).size(), is(1));
+        clock.set(100);
+        assertThat(cache.getAll(Collections.singletonList("a")).size(), is(0));
+        assertThat(cache.size(), is(0));
+    }
+
+    private static Article article(String articleId, String bodyText) {
+        final Article article = new Article();
+        article.setArticleId(articleId);
+        article.setBodyText(bodyText);
+        return article;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ArticleFetchBatcherTest {
+    private static final Instant THE_DATE = Instant.parse("2019-01-13T00:00:00Z");
+    private static final Duration ONE_DAY = Duration.ofHours(23).plusMinutes(59).plusSeconds(59);
+
+    private InfomediaSimulator simulator;
+    private InfomediaConnector connector;
+
+    @AfterEach
+    void close() {
+        try {
+            if (connector != null) {
+                connector.close();
+            }
+        } finally {
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    @Test
+    void smallRequestsWithinWindowShareOneFetch() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(200, THE_DATE, Duration.ofDays(1), "pol", "ber"));
+        final List<String> articleIds = searchAll(connector);
+        try (ArticleFetchBatcher batcher = new ArticleFetchBatcher(connector, Duration.ofMillis(500), 1000)) {
+            final List<CompletableFuture<ArticleList>> futures = requestInFives(batcher, articleIds);
+            int usage = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                final ArticleList articleList = futures.get(i).get(10, TimeUnit.SECONDS);
+                assertArticles(articleList, articleIds.subList(i * 5, i * 5 + 5));
+                assertThat(articleList.getArticleUsage().getArticleUsageCount(), is(5));
+                usage += articleList.getArticleUsage().getArticleUsageCount();
+            }
+            assertThat(usage, is(articleIds.size()));
+        }
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_FETCH), is(1L));
+    }
+
+    @Test
+    void fullBatchesAreFetchedWithoutWaitingForWindow() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(200, THE_DATE, Duration.ofDays(1), "pol", "ber"));
+        final List<String> articleIds = searchAll(connector);
+        try (ArticleFetchBatcher batcher = new ArticleFetchBatcher(connector, Duration.ofMinutes(10), 50)) {
+            final List<CompletableFuture<ArticleList>> futures = requestInFives(batcher, articleIds);
+            for (int i = 0; i < futures.size(); i++) {
+                assertArticles(futures.get(i).get(10, TimeUnit.SECONDS), articleIds.subList(i * 5, i * 5 + 5));
+            }
+        }
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_FETCH), is(4L));
+    }
+
+    @Test
+    void usageOfBatchIsSplitBetweenCallers() {
+        final ArticleUsage usage = new ArticleUsage();
+        usage.setArticleUsageCount(10);
+        usage.setArticleUsageType(100);
+
+        final ArticleUsage[] split = ArticleFetchBatcher.splitUsage(usage, new int[]{1, 1, 1});
+        assertThat(split[0].getArticleUsageCount() + split[1].getArticleUsageCount()
+                + split[2].getArticleUsageCount(), is(10));
+        assertThat(split[2].getArticleUsageType(), is(100));
+
+        final ArticleUsage[] nothingReturned = ArticleFetchBatcher.splitUsage(usage, new int[]{0, 0});
+        assertThat(nothingReturned[0].getArticleUsageCount(), is(10));
+        assertThat(nothingReturned[1].getArticleUsageCount(), is(0));
+
+        assertThat(ArticleFetchBatcher.splitUsage(null, new int[]{1})[0] == null, is(true));
+    }
+
+    /**
+     * Starts the simulator and connects to it, both closed after the test
+     */
+    private void connect(InfomediaSimulator configured) throws IOException {
+        simulator = configured.start();
+        connector = InfomediaConnectorFactory.create(simulator.getBaseUrl(), "username", "password");
+    }
+
+    private static List<String> searchAll(InfomediaConnector connector) throws InfomediaConnectorException {
+        return new ArrayList<>(connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY,
+                new HashSet<>(Arrays.asList("pol", "ber"))));
+    }
+
+    private static List<CompletableFuture<ArticleList>> requestInFives(ArticleFetchBatcher batcher, List<String> articleIds) {
+        final List<CompletableFuture<ArticleList>> futures = new ArrayList<>();
+        for (int i = 0; i < articleIds.size(); i += 5) {
+            futures.add(batcher.getArticles(new LinkedHashSet<>(articleIds.subList(i, i + 5))));
+        }
+        return futures;
+    }
+
+    private static void assertArticles(ArticleList articleList, List<String> articleIds) {
+        final List<String> actual = new ArrayList<>();
+        for (Article article : articleList.getArticles()) {
+            actual.add(article.getArticleId());
+        }
+        assertThat(actual, is(articleIds));
+    }
+}
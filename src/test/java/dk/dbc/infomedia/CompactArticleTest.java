@@ -0,0 +1,98 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompactArticleTest {
+    private static final String FETCH_PAYLOAD = "/__files/body-api-v1-article-fetch-UMIvb.json";
+
+    @Test
+    void compactArticlesReadLikeArticles() throws IOException {
+        final ArticleList articles = read(FETCH_PAYLOAD, false);
+        final ArticleList compactArticles = read(FETCH_PAYLOAD, true);
+
+        assertThat(compactArticles.getArticles().get(1) instanceof CompactArticle, is(true));
+        assertThat(ArticleStreamReader.OBJECT_MAPPER.valueToTree(compactArticles),
+                is(ArticleStreamReader.OBJECT_MAPPER.valueToTree(articles)));
+        assertThat(compactArticles.getArticles().get(1).toString(), is(articles.getArticles().get(1).toString()));
+    }
+
+    @Test
+    void publishDate() {
+        final CompactArticle article = new CompactArticle();
+        article.setPublishDate("2019-01-13T07:15:00Z");
+        assertThat(article.getPublishDate(), is("2019-01-13T07:15:00Z"));
+        assertThat(article.getPublishInstant(), is(Instant.parse("2019-01-13T07:15:00Z")));
+
+        article.setPublishDate("2019-01-13T07:15:00.000Z");
+        assertThat(article.getPublishDate(), is("2019-01-13T07:15:00.000Z"));
+        assertThat(article.getPublishInstant(), is(Instant.parse("2019-01-13T07:15:00Z")));
+
+        article.setPublishDate("13-01-2019");
+        assertThat(article.getPublishDate(), is("13-01-2019"));
+        assertThat(article.getPublishInstant(), is(nullValue()));
+
+        article.setPublishDate(null);
+        assertThat(article.getPublishDate(), is(nullValue()));
+    }
+
+    @Test
+    void repeatedValuesAreShared() {
+        final CompactArticle first = compactArticle("Politiken", "5", "Rejser");
+        final CompactArticle second = compactArticle(new String("Politiken"), "5", "Rejser");
+
+        assertThat(second.getSource(), sameInstance(first.getSource()));
+        assertThat(second.getSection(), sameInstance(first.getSection()));
+        assertThat(second.getPageIds(), is(first.getPageIds()));
+        assertThrows(UnsupportedOperationException.class, () -> second.getPageIds().add("11"));
+    }
+
+    @Test
+    void valuesAreKeptInTheFieldsOfArticle() {
+        // Only the epoch milliseconds of the publish date are added to the fields of Article
+        final List<String> fields = new ArrayList<>();
+        for (Field field : CompactArticle.class.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                fields.add(field.getName());
+            }
+        }
+        assertThat(fields, is(Collections.singletonList("publishEpochMilli")));
+    }
+
+    private static CompactArticle compactArticle(String source, String sectionId, String sectionName) {
+        final Section section = new Section();
+        section.setId(sectionId);
+        section.setName(sectionName);
+        final CompactArticle article = new CompactArticle();
+        article.setSource(source);
+        article.setSection(section);
+        article.setPageIds(Collections.singletonList(new String("10")));
+        return article;
+    }
+
+    private static ArticleList read(String resource, boolean compact) throws IOException {
+        try (InputStream inputStream = CompactArticleTest.class.getResourceAsStream(resource)) {
+            return (compact ? ArticleStreamReader.COMPACT_OBJECT_MAPPER : ArticleStreamReader.OBJECT_MAPPER)
+                    .readValue(inputStream, ArticleList.class);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class DiskArticleStoreTest {
+    private Path directory;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("article-store");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void storedArticlesSurviveReopen() throws IOException {
+        try (DiskArticleStore store = new DiskArticleStore(directory, 1 << 20)) {
+            store.putAll(Arrays.asList(article("a", "Body æøå"), article("b", "Body b")));
+        }
+
+        try (DiskArticleStore store = new DiskArticleStore(directory, 1 << 20)) {
+            final Map<String, Article> articles = store.getAll(Arrays.asList("a", "b", "c"));
+            assertThat(articles.keySet(), is(new HashSet<>(Arrays.asList("a", "b"))));
+            assertThat(articles.get("a").getBodyText(), is("Body æøå"));
+            assertThat(articles.get("b").getBodyText(), is("Body b"));
+        }
+    }
+
+    @Test
+    void compactRemovesOverwrittenRecords() throws IOException {
+        try (DiskArticleStore store = new DiskArticleStore(directory, 1 << 20)) {
+            store.putAll(Collections.singletonList(article("a", "first")));
+            store.putAll(Collections.singletonList(article("a", "second")));
+            assertThat(store.getLiveBytes(), lessThan(store.getSegmentBytes()));
+
+            store.compact();
+            assertThat(store.getSegmentBytes(), is(store.getLiveBytes()));
+            assertThat(store.getAll(Collections.singletonList("a")).get("a").getBodyText(), is("second"));
+        }
+    }
+
+    @Test
+    void diskBudgetDropsOldestArticles() throws IOException {
+        try (DiskArticleStore store = new DiskArticleStore(directory, 2000)) {
+            for (int i = 0; i < 50; i++) {
+                store.putAll(Collections.singletonList(article("id-" + i, "Body text of article " + i)));
+            }
+            assertThat(store.getSegmentBytes(), lessThanOrEqualTo(2000L));
+            assertThat(store.getAll(Collections.singletonList("id-49")).size(), is(1));
+            assertThat(store.getAll(Collections.singletonList("id-0")).size(), is(0));
+        }
+    }
+
+    @Test
+    void diskBudgetHoldsForLargeBatches() throws IOException {
+        try (DiskArticleStore store = new DiskArticleStore(directory, 2000)) {
+            final List<Article> articles = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                articles.add(article("id-" + i, "Body text of article " + i));
+            }
+            store.putAll(articles);
+            assertThat(store.getSegmentBytes(), lessThanOrEqualTo(2000L));
+            assertThat(store.getAll(Collections.singletonList("id-49")).size(), is(1));
+
+            final char[] bodyText = new char[2000];
+            Arrays.fill(bodyText, 'x');
+            store.putAll(Collections.singletonList(article("too-large", new String(bodyText))));
+            assertThat(store.getAll(Collections.singletonList("too-large")).size(), is(0));
+            assertThat(store.getAll(Collections.singletonList("id-49")).size(), is(1));
+        }
+    }
+
+    @Test
+    void storedArticlesCanBeReadAsCompactArticles() throws IOException {
+        try (DiskArticleStore store = new DiskArticleStore(directory, 1 << 20)) {
+            store.putAll(Collections.singletonList(article("a", "Body a")));
+
+            final Article article = store.getAll(Collections.singletonList("a"),
+                    ArticleStreamReader.COMPACT_OBJECT_MAPPER).get("a");
+            assertThat(article instanceof CompactArticle, is(true));
+            assertThat(article.getBodyText(), is("Body a"));
+            assertThat(store.getAll(Collections.singletonList("a")).get("a") instanceof CompactArticle, is(false));
+        }
+    }
+
+    private static Article article(String articleId, String bodyText) {
+        final Article article = new Article();
+        article.setArticleId(articleId);
+        article.setBodyText(bodyText);
+        return article;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.core.Response;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExponentialBackoffRetryStrategyTest {
+    private static final String SEARCH = InfomediaConnector.URL_INFOMEDIA_SEARCH;
+    private static final String FETCH = InfomediaConnector.URL_INFOMEDIA_FETCH;
+
+    @Test
+    void backoffIsJitteredAndCapped() {
+        final ExponentialBackoffRetryStrategy strategy = new ExponentialBackoffRetryStrategy()
+                .withBaseDelay(Duration.ofMillis(100))
+                .withMaxDelay(Duration.ofMillis(300))
+                .withMaxRetries(10)
+                .withRetryBudget(0, 100);
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            final Duration delay = strategy.retryDelay(SEARCH, attempt, response(502, null), null);
+            assertThat(delay.toMillis(), lessThanOrEqualTo(Math.min(300L, 100L << (attempt - 1))));
+        }
+        assertThat(strategy.retryDelay(SEARCH, 11, response(502, null), null), is(nullValue()));
+    }
+
+    @Test
+    void retriesConnectionFailures() {
+        final ExponentialBackoffRetryStrategy strategy = new ExponentialBackoffRetryStrategy();
+        assertThat(strategy.retryDelay(SEARCH, 1, null, new ProcessingException("timeout")), is(notNullValue()));
+        assertThat(strategy.retryDelay(SEARCH, 1, null, new IllegalStateException()), is(nullValue()));
+    }
+
+    @Test
+    void notFoundIsOnlyRetriedOutsideFetch() {
+        final ExponentialBackoffRetryStrategy strategy = new ExponentialBackoffRetryStrategy().withMaxNotFoundRetries(1);
+        assertThat(strategy.retryDelay(SEARCH, 1, response(404, null), null), is(notNullValue()));
+        assertThat(strategy.retryDelay(SEARCH, 2, response(404, null), null), is(nullValue()));
+        assertThat(strategy.retryDelay(FETCH, 1, response(404, null), null), is(nullValue()));
+        assertThat(strategy.retryDelay(FETCH, 1, response(400, null), null), is(nullValue()));
+    }
+
+    @Test
+    void honoursRetryAfter() {
+        final ExponentialBackoffRetryStrategy strategy = new ExponentialBackoffRetryStrategy()
+                .withMaxDelay(Duration.ofSeconds(30));
+        assertThat(strategy.retryDelay(FETCH, 1, response(503, "7"), null), is(Duration.ofSeconds(7)));
+        assertThat(strategy.retryDelay(FETCH, 1, response(429, "120"), null), is(nullValue()));
+        assertThat(ExponentialBackoffRetryStrategy.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"), is(Duration.ZERO));
+    }
+
+    @Test
+    void retryBudgetLimitsRetries() {
+        final ExponentialBackoffRetryStrategy strategy = new ExponentialBackoffRetryStrategy()
+                .withRetryBudget(0.5, 1);
+        assertThat(strategy.retryDelay(SEARCH, 1, response(502, null), null), is(notNullValue()));
+        assertThat(strategy.retryDelay(SEARCH, 1, response(502, null), null), is(nullValue()));
+
+        strategy.recordRequest(SEARCH);
+        strategy.recordRequest(SEARCH);
+        assertThat(strategy.getRemainingRetryBudget(), is(1.0));
+        assertThat(strategy.retryDelay(SEARCH, 1, response(502, null), null), is(notNullValue()));
+    }
+
+    private static Response response(int status, String retryAfter) {
+        final Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getHeaderString("Retry-After")).thenReturn(retryAfter);
+        return response;
+    }
+}
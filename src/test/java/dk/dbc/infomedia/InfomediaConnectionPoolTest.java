@@ -0,0 +1,129 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InfomediaConnectionPoolTest {
+    @Test
+    void poolsAreSharedPerBaseUrlAndSettings() {
+        final InfomediaTransportConfig config = new InfomediaTransportConfig();
+        final InfomediaTransportConfig otherConfig = new InfomediaTransportConfig();
+        otherConfig.setMaxConnectionsPerRoute(4);
+
+        final InfomediaConnectionPool pool = InfomediaConnectionPool.acquire("http://pool-test", config);
+        final InfomediaConnectionPool shared = InfomediaConnectionPool.acquire("http://pool-test", new InfomediaTransportConfig());
+        final InfomediaConnectionPool other = InfomediaConnectionPool.acquire("http://pool-test", otherConfig);
+        assertThat(shared, sameInstance(pool));
+        assertThat(other, not(sameInstance(pool)));
+
+        pool.release();
+        assertThat(InfomediaConnectionPool.lookup("http://pool-test", config), sameInstance(pool));
+        shared.release();
+        assertThat(InfomediaConnectionPool.lookup("http://pool-test", config), is(nullValue()));
+        other.release();
+        assertThat(InfomediaConnectionPool.lookup("http://pool-test", otherConfig), is(nullValue()));
+    }
+
+    @Test
+    void poolIsReleasedByConnectorClosedBeforeAnyRequest() {
+        final InfomediaTransportConfig config = new InfomediaTransportConfig();
+        final InfomediaConnector connector = InfomediaConnectorFactory.create("http://unused-pool-test",
+                InfomediaConnector.TimingLogLevel.INFO, "username", "password", config);
+        assertThat(InfomediaConnectionPool.lookup("http://unused-pool-test", config), is(not(nullValue())));
+
+        connector.close();
+        assertThat(InfomediaConnectionPool.lookup("http://unused-pool-test", config), is(nullValue()));
+        connector.close();
+    }
+
+    @Test
+    void failedLoginsReturnTheirConnections() throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final byte[] body = "{\"error\":\"invalid_grant\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(401, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+        final String baseUrl = "http://localhost:" + server.getAddress().getPort();
+        final InfomediaTransportConfig config = new InfomediaTransportConfig();
+        config.setMaxConnectionsPerRoute(2);
+        config.setConnectionRequestTimeout(Duration.ofSeconds(1));
+        final InfomediaConnector connector = InfomediaConnectorFactory.create(baseUrl,
+                InfomediaConnector.TimingLogLevel.INFO, "username", "wrong", config);
+        try {
+            final InfomediaConnectionPool pool = InfomediaConnectionPool.lookup(baseUrl, config);
+            for (int i = 0; i < 2 * config.getMaxConnectionsPerRoute(); i++) {
+                final InfomediaConnectorUnexpectedStatusCodeException e = assertThrows(
+                        InfomediaConnectorUnexpectedStatusCodeException.class,
+                        () -> connector.searchArticleIdsByPublishDate(Instant.parse("2019-01-13T00:00:00Z"),
+                                Duration.ofDays(1), "pol"));
+                assertThat(e.getStatusCode(), is(401));
+                assertThat(pool.getLeasedConnections(), is(0));
+            }
+        } finally {
+            connector.close();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void connectionsAreReused() throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+        final String baseUrl = "http://localhost:" + server.getAddress().getPort();
+        final InfomediaTransportConfig config = new InfomediaTransportConfig();
+        config.setIdleTimeout(Duration.ofMinutes(1));
+        final InfomediaConnectionPool pool = InfomediaConnectionPool.acquire(baseUrl, config);
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(pool.getConnectionManager())
+                .setConnectionManagerShared(true)
+                .build()) {
+            for (int i = 0; i < 3; i++) {
+                try (CloseableHttpResponse response = client.execute(new HttpGet(baseUrl + "/api"))) {
+                    EntityUtils.consume(response.getEntity());
+                }
+            }
+            assertThat(pool.getOpenedConnections(), is(1L));
+            assertThat(pool.getSecureConnections(), is(0L));
+            assertThat(pool.getAvailableConnections(), is(1));
+            assertThat(pool.getLeasedConnections(), is(0));
+        } finally {
+            pool.release();
+            server.stop(0);
+        }
+    }
+}
@@ -6,8 +6,11 @@
 package dk.dbc.infomedia;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import dk.dbc.httpclient.FailSafeHttpClient;
 import dk.dbc.httpclient.HttpClient;
 import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.core.Response;
+import net.jodah.failsafe.RetryPolicy;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.junit.jupiter.api.AfterAll;
@@ -16,14 +19,35 @@ import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.configureFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
+import static com.github.tomakehurst.wiremock.client.WireMock.okJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class InfomediaConnectorTest {
     private static WireMockServer wireMockServer;
@@ -164,10 +188,369 @@ class InfomediaConnectorTest {
         assertThat(articleIds.contains("e70a8818"), is(true));
     }
 
+    @Test
+    void callSearchArticlesAsync() {
+        final Set<String> articleIds = connector.searchArticleIdsByPublishDateAsync(theDate, oneDay, "pol").join();
+        assertThat(articleIds.size(), is(2));
+        assertThat(articleIds.contains("e70a7343"), is(true));
+        assertThat(articleIds.contains("e70a7334"), is(true));
+
+        final ArticleList articles = connector.getArticlesAsync(articleIds).join();
+        assertThat(articles.getArticles().size(), is(2));
+    }
+
+    @Test
+    void callGetArticlesAsyncOnCustomExecutor() {
+        final InfomediaConnector asyncConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        final AtomicInteger tasks = new AtomicInteger();
+        asyncConnector.setExecutor(runnable -> {
+            tasks.incrementAndGet();
+            runnable.run();
+        });
+
+        final ArticleList articles = asyncConnector.searchArticleIdsByPublishDateAsync(theDate, oneDay, "pol")
+                .thenCompose(asyncConnector::getArticlesAsync)
+                .join();
+        assertThat(articles.getArticles().size(), is(2));
+        assertThat(tasks.get(), is(2));
+    }
+
+    @Test
+    void callSearchArticlesAsyncFailure() {
+        final InfomediaConnector failingConnector = new InfomediaConnector(
+                FailSafeHttpClient.create(CLIENT, new RetryPolicy<Response>().withMaxRetries(0)),
+                wireMockHost, "unknown", "password");
+        final CompletionException e = assertThrows(CompletionException.class,
+                () -> failingConnector.searchArticleIdsByPublishDateAsync(theDate, oneDay, "pol").join());
+        assertThat(e.getCause() instanceof InfomediaConnectorException, is(true));
+    }
+
+    @Test
+    void callSearchArticlesConcurrentPaging() throws InfomediaConnectorException {
+        stubSearchPages("paged", 10, 2, 200);
+        final InfomediaConnector pagingConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        pagingConnector.setPageSize(2);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        pagingConnector.setMetrics(new InfomediaMetrics() {
+            @Override
+            public void requestStarted(String path) {
+                if (InfomediaConnector.URL_INFOMEDIA_SEARCH.equals(path)) {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                }
+            }
+
+            @Override
+            public void requestCompleted(String path, Duration duration, boolean success) {
+                if (InfomediaConnector.URL_INFOMEDIA_SEARCH.equals(path)) {
+                    inFlight.decrementAndGet();
+                }
+            }
+        });
+
+        final Set<String> serialIds = pagingConnector.searchArticleIdsByPublishDate(theDate, oneDay, "paged");
+        assertThat(maxInFlight.get(), is(1));
+
+        // Every page is delayed, so the four remaining pages overlap once they are requested together
+        pagingConnector.setPagingConcurrency(4);
+        final Set<String> concurrentIds = pagingConnector.searchArticleIdsByPublishDate(theDate, oneDay, "paged");
+
+        assertThat(serialIds.size(), is(10));
+        assertThat(concurrentIds, is(serialIds));
+        assertThat(maxInFlight.get(), greaterThan(1));
+    }
+
+    @Test
+    void callSearchAllArticlesSplitsInterval() throws InfomediaConnectorException {
+        stubSearchWindow("bisect", "2019-01-13T00:00:00Z", "2019-01-13T23:59:59Z", 3, "bisect-1", "bisect-2");
+        stubSearchWindow("bisect", "2019-01-13T00:00:00Z", "2019-01-13T11:59:59Z", 2, "bisect-1", "bisect-3");
+        stubSearchWindow("bisect", "2019-01-13T11:59:59Z", "2019-01-13T23:59:59Z", 1, "bisect-2");
+        final InfomediaConnector bisectingConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        bisectingConnector.setPageSize(2);
+        bisectingConnector.setPagingConcurrency(2);
+
+        final Set<String> articleIds = bisectingConnector.searchAllArticleIdsByPublishDate(theDate, oneDay, "bisect");
+        assertThat(articleIds, is(new HashSet<>(Arrays.asList("bisect-1", "bisect-2", "bisect-3"))));
+    }
+
+    @Test
+    void callGetArticlesInConcurrentBatches() throws InfomediaConnectorException {
+        stubFetch("chunk-0", "chunk-1");
+        stubFetch("chunk-2", "chunk-3");
+        stubFetch("chunk-4");
+        final InfomediaConnector batchingConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        batchingConnector.setFetchBatchSize(2);
+        batchingConnector.setFetchConcurrency(3);
+
+        final Set<String> articleIds = new LinkedHashSet<>(
+                Arrays.asList("chunk-0", "chunk-1", "chunk-2", "chunk-3", "chunk-4"));
+        final ArticleList articles = batchingConnector.getArticles(articleIds);
+        final List<String> fetchedIds = new ArrayList<>();
+        for (Article article : articles.getArticles()) {
+            fetchedIds.add(article.getArticleId());
+        }
+        assertThat(fetchedIds, is(new ArrayList<>(articleIds)));
+        assertThat(articles.getArticleUsage().getArticleUsageCount(), is(5));
+    }
+
+    @Test
+    void callGetArticlesStreaming() throws InfomediaConnectorException {
+        final List<Article> articles = new ArrayList<>();
+        final ArticleUsage articleUsage = connector.getArticles(
+                new HashSet<>(Arrays.asList("e70a7343", "e70a7334")), articles::add);
+
+        assertThat(articles.size(), is(2));
+        assertThat(articles.get(0).getArticleId(), is("e70a7343"));
+        assertThat(articles.get(0).getBodyText(), is("Pol BodyText 1 Full"));
+        assertThat(articles.get(1).getArticleId(), is("e70a7334"));
+        assertThat(articles.get(1).getSection().getId(), is("1"));
+        assertThat(articleUsage.getArticleUsageCount(), is(113));
+        assertThat(articleUsage.getArticleUsageType(), is(100));
+    }
+
+    @Test
+    void callSearchArticlesFetchesOnlyTruncatedArticles() throws InfomediaConnectorException {
+        stubFor(post(urlEqualTo("/api/v1/article/search"))
+                .withRequestBody(matchingJsonPath("$.IqlQuery", containing("sourcecode:[fused]")))
+                .willReturn(okJson("{\"NumFound\":2,\"PagingInfo\":null,\"Articles\":[" +
+                        "{\"ArticleId\":\"fused-complete\",\"BodyText\":\"complete body\",\"WordCount\":2}," +
+                        "{\"ArticleId\":\"fused-truncated\",\"BodyText\":\"truncated\",\"WordCount\":40}]," +
+                        "\"ArticleUsage\":null}")));
+        stubFetch("fused-truncated");
+
+        final ArticleList articles = connector.searchArticlesByPublishDate(theDate, oneDay, "fused");
+        assertThat(articles.getArticles().size(), is(2));
+        assertThat(articles.getArticles().get(0).getBodyText(), is("complete body"));
+        assertThat(articles.getArticles().get(1).getBodyText(), is("fused-truncated BodyText"));
+        verify(1, postRequestedFor(urlEqualTo("/api/v1/article/fetch"))
+                .withRequestBody(equalToJson("[\"fused-truncated\"]")));
+    }
+
+    @Test
+    void callSearchArticlesLeavesOutTruncatedArticlesNotFetched() throws InfomediaConnectorException {
+        stubFor(post(urlEqualTo("/api/v1/article/search"))
+                .withRequestBody(matchingJsonPath("$.IqlQuery", containing("sourcecode:[gone]")))
+                .willReturn(okJson("{\"NumFound\":3,\"PagingInfo\":null,\"Articles\":[" +
+                        "{\"ArticleId\":\"gone-complete\",\"BodyText\":\"complete body\",\"WordCount\":2}," +
+                        "{\"ArticleId\":\"gone-fetched\",\"BodyText\":\"truncated\",\"WordCount\":40}," +
+                        "{\"ArticleId\":\"gone-missing\",\"BodyText\":\"truncated\",\"WordCount\":40}]," +
+                        "\"ArticleUsage\":null}")));
+        stubFor(post(urlEqualTo("/api/v1/article/fetch"))
+                .withRequestBody(equalToJson("[\"gone-fetched\",\"gone-missing\"]", true, false))
+                .willReturn(okJson("{\"Articles\":[{\"ArticleId\":\"gone-fetched\",\"BodyText\":\"full body\"}]," +
+                        "\"ArticleUsage\":{\"ArticleUsageCount\":1,\"ArticleUsageType\":0}}")));
+
+        final ArticleList articles = connector.searchArticlesByPublishDate(theDate, oneDay, "gone");
+        final List<String> articleIds = new ArrayList<>();
+        for (Article article : articles.getArticles()) {
+            articleIds.add(article.getArticleId());
+        }
+        assertThat(articleIds, is(Arrays.asList("gone-complete", "gone-fetched")));
+        assertThat(articles.getArticles().get(1).getBodyText(), is("full body"));
+    }
+
+    @Test
+    void callSearchArticlesSingleNewsPaperAllTruncated() throws InfomediaConnectorException {
+        final InfomediaConnector fusingConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        fusingConnector.setCompleteSearchArticle(article -> false);
+
+        final ArticleList articles = fusingConnector.searchArticlesByPublishDate(theDate, oneDay, "pol");
+        assertThat(articles.getArticles().size(), is(2));
+        assertThat(articles.getArticles().get(0).getBodyText(), is("Pol BodyText 1 Full"));
+        assertThat(articles.getArticles().get(1).getBodyText(), is("Pol BodyText 2 Full"));
+    }
+
+    @Test
+    void callHarvestArticlesPipelined() throws InfomediaConnectorException {
+        stubSearchPages("pipe", 6, 2, 50);
+        stubFetch("pipe-0", "pipe-1");
+        stubFetch("pipe-2", "pipe-3");
+        stubFetch("pipe-4", "pipe-5");
+        final InfomediaConnector pipelineConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        pipelineConnector.setPageSize(2);
+        pipelineConnector.setPipelineCapacity(1);
+
+        final List<String> harvestedIds = new ArrayList<>();
+        final ArticleUsage articleUsage = pipelineConnector.harvestArticlesByPublishDate(theDate, oneDay,
+                new HashSet<>(Collections.singletonList("pipe")), article -> harvestedIds.add(article.getArticleId()));
+        assertThat(harvestedIds, is(Arrays.asList("pipe-0", "pipe-1", "pipe-2", "pipe-3", "pipe-4", "pipe-5")));
+        assertThat(articleUsage.getArticleUsageCount(), is(6));
+    }
+
+    @Test
+    void callGetArticlesCached() throws InfomediaConnectorException {
+        stubFetch("cached-0", "cached-1");
+        stubFetch("cached-2");
+        final InfomediaConnector cachingConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        final ArticleCache cache = new ArticleCache(100);
+        cachingConnector.setArticleCache(cache);
+
+        cachingConnector.getArticles(new LinkedHashSet<>(Arrays.asList("cached-0", "cached-1")));
+        final ArticleList articles = cachingConnector.getArticles(
+                new LinkedHashSet<>(Arrays.asList("cached-2", "cached-1", "cached-0")));
+
+        final List<String> articleIds = new ArrayList<>();
+        for (Article article : articles.getArticles()) {
+            articleIds.add(article.getArticleId());
+        }
+        assertThat(articleIds, is(Arrays.asList("cached-2", "cached-1", "cached-0")));
+        assertThat(articles.getArticleUsage().getArticleUsageCount(), is(1));
+        assertThat(cache.getHitCount(), is(2L));
+        assertThat(cache.getMissCount(), is(3L));
+        verify(1, postRequestedFor(urlEqualTo("/api/v1/article/fetch"))
+                .withRequestBody(equalToJson("[\"cached-2\"]")));
+    }
+
+    @Test
+    void callRefreshesTokenInBackground() throws InfomediaConnectorException {
+        final String credentials = "grant_type=password&username=refresher&password=password";
+        stubFor(post(urlEqualTo("/oauth/token"))
+                .withRequestBody(equalTo(credentials))
+                .willReturn(okJson("{\"access_token\":\"refresher-token\",\"token_type\":\"bearer\",\"expires_in\":3599}")));
+        final InfomediaConnector refreshingConnector = new InfomediaConnector(CLIENT, wireMockHost, "refresher", "password");
+        refreshingConnector.setExecutor(Runnable::run);
+        refreshingConnector.setTokenRefreshFraction(0);
+
+        refreshingConnector.searchArticleIdsByPublishDate(theDate, oneDay, "pol");
+        refreshingConnector.searchArticleIdsByPublishDate(theDate, oneDay, "pol");
+        verify(2, postRequestedFor(urlEqualTo("/oauth/token")).withRequestBody(equalTo(credentials)));
+    }
+
+    @Test
+    void callSearchArticlesWithRetryStrategy() {
+        stubFor(post(urlEqualTo("/api/v1/article/search"))
+                .withRequestBody(matchingJsonPath("$.IqlQuery", containing("sourcecode:[unavailable]")))
+                .willReturn(aResponse().withStatus(502)));
+        final InfomediaConnector retryingConnector = new InfomediaConnector(CLIENT, wireMockHost,
+                InfomediaConnector.TimingLogLevel.INFO, "username", "password",
+                new ExponentialBackoffRetryStrategy().withBaseDelay(Duration.ofMillis(1)).withMaxRetries(2));
+
+        final InfomediaConnectorUnexpectedStatusCodeException e = assertThrows(
+                InfomediaConnectorUnexpectedStatusCodeException.class,
+                () -> retryingConnector.searchArticleIdsByPublishDate(theDate, oneDay, "unavailable"));
+        assertThat(e.getStatusCode(), is(502));
+        verify(3, postRequestedFor(urlEqualTo("/api/v1/article/search"))
+                .withRequestBody(matchingJsonPath("$.IqlQuery", containing("sourcecode:[unavailable]"))));
+    }
+
+    @Test
+    void callRecordsMetrics() throws InfomediaConnectorException {
+        stubSearchPages("measured", 5, 2, 0);
+        stubFetch("measured-0", "measured-1", "measured-2", "measured-3", "measured-4");
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final InfomediaConnector measuredConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        measuredConnector.setPageSize(2);
+        measuredConnector.setMetrics(new InfomediaMetrics() {
+            @Override
+            public void requestCompleted(String path, Duration duration, boolean success) {
+                events.add(path + " " + success);
+            }
+
+            @Override
+            public void searchPages(int pages) {
+                events.add("pages " + pages);
+            }
+
+            @Override
+            public void fetchIds(int articleIds) {
+                events.add("ids " + articleIds);
+            }
+
+            @Override
+            public void tokenRefreshed() {
+                events.add("token");
+            }
+        });
+
+        measuredConnector.getArticles(measuredConnector.searchArticleIdsByPublishDate(theDate, oneDay, "measured"));
+        assertThat(events, is(Arrays.asList(
+                "token", "/oauth/token true",
+                "/api/v1/article/search true", "/api/v1/article/search true", "/api/v1/article/search true",
+                "pages 3",
+                "ids 5", "/api/v1/article/fetch true")));
+    }
+
+    @Test
+    void callGetArticlesCompact() throws InfomediaConnectorException {
+        final InfomediaConnector compactConnector = new InfomediaConnector(CLIENT, wireMockHost, "username", "password");
+        compactConnector.setCompactArticles(true);
+
+        final ArticleList articles = compactConnector.getArticles(new HashSet<>(Arrays.asList("e70a7343", "e70a7334")));
+        assertThat(articles.getArticles().size(), is(2));
+        assertThat(articles.getArticles().get(0) instanceof CompactArticle, is(true));
+        assertThat(articles.getArticles().get(0).getPublishDate(), is("2019-01-13T00:00:00Z"));
+        assertThat(articles.getArticles().get(0).getSource(), is("Politiken"));
+        assertThat(articles.getArticles().get(1).getSection().getId(), is("1"));
+    }
+
+    @Test
+    void callGetProjectedArticles() throws InfomediaConnectorException {
+        final ArticleList articles = connector.getProjectedArticles(new HashSet<>(Arrays.asList("e70a7343", "e70a7334")),
+                EnumSet.of(ArticleField.HEADING, ArticleField.SOURCE));
+        assertThat(articles.getArticles().size(), is(2));
+        assertThat(articles.getArticles().get(0).getArticleId(), is("e70a7343"));
+        assertThat(articles.getArticles().get(0).getSource(), is("Politiken"));
+        assertThat(articles.getArticles().get(0).getBodyText(), is(nullValue()));
+        assertThat(articles.getArticles().get(1).getSection(), is(nullValue()));
+    }
+
     @Test
     void callGetArticlesEmptyList() throws InfomediaConnectorException {
         assertThat(connector.getArticles(new HashSet<>()).getArticles().size(), is(0));
         assertThat(connector.getArticles(null).getArticles().size(), is(0));
     }
 
+    /**
+     * Stubs a search for a single source returning numFound articles with ids "{source}-{n}",
+     * split into pages of pageSize articles each delayed by delayMillis
+     */
+    static void stubSearchPages(String source, int numFound, int pageSize, int delayMillis) {
+        for (int startIndex = 0; startIndex < numFound; startIndex += pageSize) {
+            final List<String> articleIds = new ArrayList<>();
+            for (int i = startIndex; i < Math.min(startIndex + pageSize, numFound); i++) {
+                articleIds.add(source + "-" + i);
+            }
+            stubFor(post(urlEqualTo("/api/v1/article/search"))
+                    .withRequestBody(matchingJsonPath("$.IqlQuery", containing("sourcecode:[" + source + "]")))
+                    .withRequestBody(matchingJsonPath("$.PagingParameter.StartIndex", equalTo(String.valueOf(startIndex))))
+                    .willReturn(okJson(searchResultJson(source, numFound, articleIds)).withFixedDelay(delayMillis)));
+        }
+    }
+
+    /**
+     * Stubs the first page of a search for a single source within the interval [from..to]
+     */
+    static void stubSearchWindow(String source, String from, String to, int numFound, String... articleIds) {
+        stubFor(post(urlEqualTo("/api/v1/article/search"))
+                .withRequestBody(matchingJsonPath("$.IqlQuery",
+                        equalTo(String.format("sourcecode:[%s] AND publishdate:[%s..%s]", source, from, to))))
+                .withRequestBody(matchingJsonPath("$.PagingParameter.StartIndex", equalTo("0")))
+                .willReturn(okJson(searchResultJson(source, numFound, Arrays.asList(articleIds)))));
+    }
+
+    /**
+     * Stubs a fetch of exactly the given article ids
+     */
+    static void stubFetch(String... articleIds) {
+        final List<String> articles = new ArrayList<>();
+        for (String articleId : articleIds) {
+            articles.add(String.format("{\"ArticleId\":\"%s\",\"BodyText\":\"%s BodyText\"}", articleId, articleId));
+        }
+        final String body = String.format("{\"Articles\":[%s]," +
+                        "\"ArticleUsage\":{\"ArticleUsageCount\":%d,\"ArticleUsageType\":0}}",
+                String.join(",", articles), articleIds.length);
+        stubFor(post(urlEqualTo("/api/v1/article/fetch"))
+                .withRequestBody(equalToJson("[\"" + String.join("\",\"", articleIds) + "\"]", true, false))
+                .willReturn(okJson(body)));
+    }
+
+    static String searchResultJson(String source, int numFound, List<String> articleIds) {
+        final List<String> articles = new ArrayList<>();
+        for (String articleId : articleIds) {
+            articles.add(String.format("{\"ArticleId\":\"%s\",\"Source\":\"%s\"}", articleId, source));
+        }
+        return String.format("{\"NumFound\":%d,\"PagingInfo\":null,\"Articles\":[%s]," +
+                        "\"ArticleUsage\":{\"ArticleUsageCount\":0,\"ArticleUsageType\":0}}",
+                numFound, String.join(",", articles));
+    }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class InfomediaRateLimiterTest {
+
+    @Test
+    void tokenBucketReservesIntoDebt() {
+        final AtomicLong clock = new AtomicLong();
+        final TokenBucket bucket = new TokenBucket(2, 10, clock::get);
+
+        assertThat(bucket.reserve(2), is(0L));
+        assertThat(bucket.reserve(1), is(TimeUnit.MILLISECONDS.toNanos(100)));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(bucket.available(), is(2.0));
+    }
+
+    @Test
+    void articleBudgetFollowsReportedUsage() throws InfomediaConnectorException {
+        final AtomicLong clock = new AtomicLong();
+        final InfomediaRateLimiter limiter = new InfomediaRateLimiter(10, 10, 1000, Duration.ofDays(1), clock::get);
+
+        limiter.acquireArticles(10);
+        limiter.observe(10, usage(10));
+        assertThat(limiter.getAvailableArticles(), is(990.0));
+
+        // 30 articles charged for a fetch of 10
+        limiter.acquireArticles(10);
+        limiter.observe(10, usage(30));
+        assertThat(limiter.getAvailableArticles(), is(960.0));
+
+        // 4 articles charged for a fetch of 10
+        limiter.acquireArticles(10);
+        limiter.observe(10, usage(4));
+        assertThat(limiter.getAvailableArticles(), is(956.0));
+
+        limiter.observe(10, null);
+        assertThat(limiter.getAvailableArticles(), is(956.0));
+    }
+
+    @Test
+    void concurrentFetchesAreSettledOnTheirOwn() throws InfomediaConnectorException {
+        final AtomicLong clock = new AtomicLong();
+        final InfomediaRateLimiter limiter = new InfomediaRateLimiter(10, 10, 1000, Duration.ofDays(1), clock::get);
+
+        limiter.acquireArticles(10);
+        limiter.acquireArticles(20);
+        // The response of the second fetch arrives first
+        limiter.observe(20, usage(20));
+        limiter.observe(10, usage(10));
+        assertThat(limiter.getAvailableArticles(), is(970.0));
+    }
+
+    @Test
+    void requestBudget() throws InfomediaConnectorException {
+        final AtomicLong clock = new AtomicLong();
+        final InfomediaRateLimiter limiter = new InfomediaRateLimiter(1, 3, 1000, Duration.ofDays(1), clock::get);
+        limiter.acquireRequest();
+        limiter.acquireRequest();
+        assertThat(limiter.getAvailableRequests(), is(1.0));
+    }
+
+    private static ArticleUsage usage(int count) {
+        final ArticleUsage articleUsage = new ArticleUsage();
+        articleUsage.setArticleUsageCount(count);
+        return articleUsage;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process simulator of the Infomedia token, search and fetch endpoints.
+ * <p>
+ * The corpus consists of articles spread evenly over an interval and round-robin over the given sources.
+ * Search pages carry the first words of each body text, fetches return the full article. Optionally
+ * every search request orders the matching articles at random like Infomedia does, which makes naive
+ * paging lose articles. Requests can be delayed by a base latency plus an exponentially distributed
+ * spread, and fail in bursts of 502 responses. Bearer tokens expire after the configured lifetime,
+ * after which requests carrying them are rejected with 401. Responses are gzip compressed for requests accepting it.
+ */
+class InfomediaSimulator implements Closeable {
+    private static final Pattern SOURCES = Pattern.compile("sourcecode:\\[([^]]*)]");
+    private static final Pattern PUBLISH_DATE = Pattern.compile("publishdate:\\[([^.]+)\\.\\.([^]]+)]");
+    private static final String[] WORDS = {"infomedia", "artikel", "avis", "kilde", "sektion", "forfatter", "side",
+            "overskrift", "manchet", "billedtekst"};
+    private static final int SEARCH_WORDS = 20;
+    // Only annotated fields, so derived getters like ArticleSearchResult.getArticleIds() stay out of responses
+    private static final ObjectMapper OBJECT_MAPPER = ArticleStreamReader.OBJECT_MAPPER.copy()
+            .configure(MapperFeature.AUTO_DETECT_GETTERS, false)
+            .configure(MapperFeature.AUTO_DETECT_IS_GETTERS, false);
+
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final Map<String, Instant> tokens = new ConcurrentHashMap<>();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong compressedResponses = new AtomicLong();
+    private final AtomicInteger burstRemaining = new AtomicInteger();
+
+    private List<SimulatedArticle> corpus = Collections.emptyList();
+    private Map<String, SimulatedArticle> corpusById = Collections.emptyMap();
+    private boolean randomOrdering;
+    private long latencyNanos;
+    private long latencySpreadNanos;
+    private double burstProbability;
+    private int burstLength;
+    private Duration tokenLifetime = Duration.ofHours(1);
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    /**
+     * Generates the corpus
+     *
+     * @param articles    number of articles
+     * @param publishDate publish date of the first article
+     * @param span        interval over which the articles are published
+     * @param sources     source codes
+     * @return this simulator
+     */
+    InfomediaSimulator withCorpus(int articles, Instant publishDate, Duration span, String... sources) {
+        final List<SimulatedArticle> generated = new ArrayList<>(articles);
+        final Map<String, SimulatedArticle> byId = new HashMap<>();
+        final Random random = new Random(articles);
+        final long stepMillis = articles == 0 ? 0 : span.toMillis() / articles;
+        for (int i = 0; i < articles; i++) {
+            final SimulatedArticle article = new SimulatedArticle(String.format("sim%07d", i),
+                    sources[i % sources.length], publishDate.plusMillis(i * stepMillis).toString(),
+                    50 + random.nextInt(750), random.nextLong());
+            generated.add(article);
+            byId.put(article.articleId, article);
+        }
+        corpus = generated;
+        corpusById = byId;
+        return this;
+    }
+
+    /**
+     * @param randomOrdering if true every search request orders the matching articles at random
+     * @return this simulator
+     */
+    InfomediaSimulator withRandomOrdering(boolean randomOrdering) {
+        this.randomOrdering = randomOrdering;
+        return this;
+    }
+
+    /**
+     * @param latency minimum latency of every request
+     * @param spread  mean of the exponentially distributed latency added to the minimum
+     * @return this simulator
+     */
+    InfomediaSimulator withLatency(Duration latency, Duration spread) {
+        this.latencyNanos = latency.toNanos();
+        this.latencySpreadNanos = spread.toNanos();
+        return this;
+    }
+
+    /**
+     * @param probability probability that a search or fetch request starts a burst of failures
+     * @param length      number of consecutive search and fetch requests failing with 502 in a burst
+     * @return this simulator
+     */
+    InfomediaSimulator withFailureBursts(double probability, int length) {
+        this.burstProbability = probability;
+        this.burstLength = length;
+        return this;
+    }
+
+    /**
+     * @param tokenLifetime lifetime of issued bearer tokens, reported in whole seconds
+     * @return this simulator
+     */
+    InfomediaSimulator withTokenLifetime(Duration tokenLifetime) {
+        this.tokenLifetime = tokenLifetime;
+        return this;
+    }
+
+    InfomediaSimulator start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverExecutor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "infomedia-simulator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(serverExecutor);
+        server.createContext(InfomediaConnector.URL_OAUTH_TOKEN, this::handleToken);
+        server.createContext(InfomediaConnector.URL_INFOMEDIA_SEARCH, this::handleSearch);
+        server.createContext(InfomediaConnector.URL_INFOMEDIA_FETCH, this::handleFetch);
+        server.start();
+        return this;
+    }
+
+    String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    int getCorpusSize() {
+        return corpus.size();
+    }
+
+    long getRequestCount(String path) {
+        final AtomicLong count = requests.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return number of requests failed by a burst
+     */
+    long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    /**
+     * @return number of requests rejected for an unknown or expired token
+     */
+    long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * @return number of responses sent gzip compressed to requests accepting it
+     */
+    long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            serverExecutor.shutdownNow();
+        }
+    }
+
+    private void handleToken(HttpExchange exchange) throws IOException {
+        try {
+            readBody(exchange);
+            count(InfomediaConnector.URL_OAUTH_TOKEN);
+            delay();
+            final String token = UUID.randomUUID().toString();
+            tokens.put(token, Instant.now().plus(tokenLifetime));
+            final AuthToken authToken = new AuthToken();
+            authToken.setAccessToken(token);
+            authToken.setTokenType("bearer");
+            authToken.setExpiresIn((int) tokenLifetime.getSeconds());
+            respond(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(authToken));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleSearch(HttpExchange exchange) throws IOException {
+        try {
+            final byte[] body = readBody(exchange);
+            if (!admit(exchange, InfomediaConnector.URL_INFOMEDIA_SEARCH)) {
+                return;
+            }
+            final ArticleSearchRequest request = OBJECT_MAPPER.readValue(body, ArticleSearchRequest.class);
+            final List<SimulatedArticle> matches = search(request.getIqlQuery());
+            if (randomOrdering) {
+                Collections.shuffle(matches, ThreadLocalRandom.current());
+            }
+            final int startIndex = Math.min(request.getPagingParameter().getStartIndex(), matches.size());
+            final int endIndex = Math.min(startIndex + request.getPagingParameter().getPagesize(), matches.size());
+            final List<Article> articles = new ArrayList<>(endIndex - startIndex);
+            for (SimulatedArticle article : matches.subList(startIndex, endIndex)) {
+                articles.add(article.toArticle(SEARCH_WORDS));
+            }
+            final ArticleSearchResult result = new ArticleSearchResult();
+            result.setNumFound(matches.size());
+            result.setArticles(articles);
+            result.setArticleUsage(articleUsage(0));
+            respond(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(result));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleFetch(HttpExchange exchange) throws IOException {
+        try {
+            final byte[] body = readBody(exchange);
+            if (!admit(exchange, InfomediaConnector.URL_INFOMEDIA_FETCH)) {
+                return;
+            }
+            final List<String> articleIds = OBJECT_MAPPER.readValue(body,
+                    new TypeReference<List<String>>() {});
+            final List<Article> articles = new ArrayList<>(articleIds.size());
+            for (String articleId : articleIds) {
+                final SimulatedArticle article = corpusById.get(articleId);
+                if (article != null) {
+                    articles.add(article.toArticle(Integer.MAX_VALUE));
+                }
+            }
+            final ArticleList result = new ArticleList();
+            result.setArticles(articles);
+            // Like Infomedia, the usage of a fetch counts the articles charged for that fetch alone
+            result.setArticleUsage(articleUsage(articles.size()));
+            respond(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(result));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Counts and delays the request, then fails it if it is part of a failure burst or carries an invalid token
+     */
+    private boolean admit(HttpExchange exchange, String path) throws IOException {
+        count(path);
+        delay();
+        if (inFailureBurst()) {
+            failedRequests.incrementAndGet();
+            respond(exchange, 502, new byte[0]);
+            return false;
+        }
+        final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        final String token = authorization == null ? "" : authorization.replaceFirst("(?i)^bearer ", "");
+        final Instant expiresAt = tokens.get(token);
+        if (expiresAt == null || Instant.now().isAfter(expiresAt)) {
+            rejectedRequests.incrementAndGet();
+            respond(exchange, 401, new byte[0]);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean inFailureBurst() {
+        if (burstRemaining.getAndUpdate(remaining -> Math.max(remaining - 1, 0)) > 0) {
+            return true;
+        }
+        if (burstProbability > 0 && ThreadLocalRandom.current().nextDouble() < burstProbability) {
+            burstRemaining.set(burstLength - 1);
+            return true;
+        }
+        return false;
+    }
+
+    private List<SimulatedArticle> search(String iqlQuery) {
+        final Matcher sourceMatcher = SOURCES.matcher(iqlQuery);
+        final Matcher publishDateMatcher = PUBLISH_DATE.matcher(iqlQuery);
+        if (!sourceMatcher.find() || !publishDateMatcher.find()) {
+            throw new IllegalArgumentException("Unsupported IQL query " + iqlQuery);
+        }
+        final Set<String> sources = new HashSet<>(Arrays.asList(sourceMatcher.group(1).split(",")));
+        final Instant from = Instant.parse(publishDateMatcher.group(1));
+        final Instant to = Instant.parse(publishDateMatcher.group(2));
+        final List<SimulatedArticle> matches = new ArrayList<>();
+        for (SimulatedArticle article : corpus) {
+            if (sources.contains(article.source) && !article.publishDate.isBefore(from)
+                    && !article.publishDate.isAfter(to)) {
+                matches.add(article);
+            }
+        }
+        return matches;
+    }
+
+    private void count(String path) {
+        requests.computeIfAbsent(path, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private void delay() {
+        long nanos = latencyNanos;
+        if (latencySpreadNanos > 0) {
+            nanos += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * latencySpreadNanos);
+        }
+        if (nanos > 0) {
+            try {
+                Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static ArticleUsage articleUsage(int count) {
+        final ArticleUsage articleUsage = new ArticleUsage();
+        articleUsage.setArticleUsageCount(count);
+        articleUsage.setArticleUsageType(100);
+        return articleUsage;
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (body.length > 0 && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            compressedResponses.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(status, 0);
+            try (OutputStream outputStream = new GZIPOutputStream(exchange.getResponseBody())) {
+                outputStream.write(body);
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        }
+    }
+
+    /**
+     * Compact description of a corpus article from which its text is generated on demand
+     */
+    private static class SimulatedArticle {
+        private final String articleId;
+        private final String source;
+        private final Instant publishDate;
+        private final String publishDateText;
+        private final int wordCount;
+        private final long seed;
+
+        private SimulatedArticle(String articleId, String source, String publishDate, int wordCount, long seed) {
+            this.articleId = articleId;
+            this.source = source;
+            this.publishDate = Instant.parse(publishDate);
+            this.publishDateText = publishDate;
+            this.wordCount = wordCount;
+            this.seed = seed;
+        }
+
+        private Article toArticle(int maxWords) {
+            final Random random = new Random(seed);
+            final int words = Math.min(wordCount, maxWords);
+            final StringBuilder bodyText = new StringBuilder(words * 8);
+            for (int i = 0; i < words; i++) {
+                if (i > 0) {
+                    bodyText.append(' ');
+                }
+                bodyText.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            final Section section = new Section();
+            section.setId(String.valueOf(1 + random.nextInt(10)));
+            section.setName("");
+            final Article article = new Article();
+            article.setArticleId(articleId);
+            article.setArticleUrl("https://mediaresearchapi.infomedia.dk/api/v1/article?id=" + articleId);
+            article.setSource(source);
+            article.setPublishDate(publishDateText);
+            article.setHeading(source + " heading " + articleId);
+            article.setSubHeading("");
+            article.setLead("");
+            article.setParagraph("");
+            article.setBodyText(bodyText.toString());
+            article.setWordCount(wordCount);
+            article.setAuthors(Collections.emptyList());
+            article.setCaptions(Collections.emptyList());
+            article.setPageIds(Collections.singletonList(String.valueOf(1 + random.nextInt(40))));
+            article.setSection(section);
+            return article;
+        }
+    }
+}
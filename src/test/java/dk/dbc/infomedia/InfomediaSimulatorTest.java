@@ -0,0 +1,421 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+class InfomediaSimulatorTest {
+    private static final Instant THE_DATE = Instant.parse("2019-01-13T00:00:00Z");
+    private static final Duration ONE_DAY = Duration.ofHours(23).plusMinutes(59).plusSeconds(59);
+    private static final Set<String> SOURCES = new HashSet<>(Arrays.asList("pol", "ber"));
+
+    private InfomediaSimulator simulator;
+    private InfomediaConnector connector;
+
+    @AfterEach
+    void close() {
+        try {
+            if (connector != null) {
+                connector.close();
+            }
+        } finally {
+            if (simulator != null) {
+                simulator.close();
+            }
+        }
+    }
+
+    @Test
+    void searchAllFindsEveryArticleDespiteRandomOrdering() throws IOException, InfomediaConnectorException {
+        connect(new InfomediaSimulator()
+                .withCorpus(2000, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withRandomOrdering(true));
+        connector.setPageSize(100);
+        connector.setPagingConcurrency(4);
+
+        assertThat(connector.searchArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES).size(), lessThan(2000));
+        final Set<String> articleIds = connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES);
+        assertThat(articleIds.size(), is(2000));
+        assertThat(connector.getArticles(articleIds).getArticles().size(), is(2000));
+    }
+
+    @Test
+    void retryStrategyRidesOutFailureBursts() throws IOException, InfomediaConnectorException {
+        simulator = new InfomediaSimulator()
+                .withCorpus(1000, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withFailureBursts(0.3, 3)
+                .start();
+        connector = InfomediaConnectorFactory.create(simulator.getBaseUrl(),
+                InfomediaConnector.TimingLogLevel.DEBUG, "username", "password",
+                new ExponentialBackoffRetryStrategy()
+                        .withBaseDelay(Duration.ofMillis(1))
+                        .withMaxRetries(10)
+                        .withRetryBudget(1, 100));
+        connector.setPageSize(100);
+        connector.setFetchBatchSize(100);
+
+        final Set<String> articleIds = connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES);
+        assertThat(articleIds.size(), is(1000));
+        assertThat(connector.getArticles(articleIds).getArticles().size(), is(1000));
+        assertThat(simulator.getFailedRequests(), greaterThan(0L));
+    }
+
+    @Test
+    void tokenIsRenewedBeforeItExpires() throws IOException, InfomediaConnectorException, InterruptedException {
+        connect(new InfomediaSimulator()
+                .withCorpus(100, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withTokenLifetime(Duration.ofSeconds(4)));
+        // Refreshed after one of the two seconds of local lifetime left by the expiry margin
+        connector.setTokenRefreshFraction(0.5);
+        final CountDownLatch tokensIssued = new CountDownLatch(2);
+        connector.setMetrics(new InfomediaMetrics() {
+            @Override
+            public void tokenRefreshed() {
+                tokensIssued.countDown();
+            }
+        });
+        connector.searchArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES);
+
+        // The connector is idle while the token is refreshed in the background
+        assertThat(tokensIssued.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_SEARCH), is(1L));
+        final long tokenRequests = simulator.getRequestCount(InfomediaConnector.URL_OAUTH_TOKEN);
+        assertThat(connector.searchArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES).size(), is(100));
+
+        assertThat(tokenRequests, greaterThan(1L));
+        assertThat(simulator.getRejectedRequests(), is(0L));
+    }
+
+    @Test
+    void concurrentFetchesOfTheSameIdsAreShared() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(150, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withLatency(Duration.ofMillis(300), Duration.ZERO));
+        connector.setSingleFlightFetches(true);
+        final List<String> articleIds = new ArrayList<>(
+                connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES));
+        final CountDownLatch firstFetchStarted = new CountDownLatch(1);
+        final AtomicLong fetchedIds = new AtomicLong();
+        final AtomicLong sharedIds = new AtomicLong();
+        connector.setMetrics(new InfomediaMetrics() {
+            @Override
+            public void fetchIds(int count) {
+                fetchedIds.addAndGet(count);
+                firstFetchStarted.countDown();
+            }
+
+            @Override
+            public void fetchIdsShared(int count) {
+                sharedIds.addAndGet(count);
+            }
+        });
+
+        final CompletableFuture<ArticleList> first = connector.getArticlesAsync(
+                new LinkedHashSet<>(articleIds.subList(0, 100)));
+        firstFetchStarted.await();
+        final ArticleList second = connector.getArticles(new LinkedHashSet<>(articleIds.subList(50, 150)));
+
+        assertThat(first.get().getArticles().size(), is(100));
+        assertThat(second.getArticles().size(), is(100));
+        assertThat(second.getArticles().get(0).getArticleId(), is(articleIds.get(50)));
+        assertThat(fetchedIds.get(), is(150L));
+        assertThat(sharedIds.get(), is(50L));
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_FETCH), is(2L));
+    }
+
+    @Test
+    void compressedResponsesAreDecoded() throws IOException, InfomediaConnectorException {
+        connect(new InfomediaSimulator()
+                .withCorpus(500, THE_DATE, Duration.ofDays(1), "pol", "ber"));
+        final AtomicLong encodedBytes = new AtomicLong();
+        final AtomicLong decodedBytes = new AtomicLong();
+        connector.setMetrics(new InfomediaMetrics() {
+            @Override
+            public void responseDecoded(String path, long encoded, long decoded) {
+                encodedBytes.addAndGet(encoded);
+                decodedBytes.addAndGet(decoded);
+            }
+        });
+
+        final Set<String> articleIds = connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES);
+        assertThat(connector.getArticles(articleIds).getArticles().size(), is(500));
+        assertThat(simulator.getCompressedResponses(), greaterThan(0L));
+        assertThat(encodedBytes.get() * 2, lessThan(decodedBytes.get()));
+
+        connector.setResponseCompression(false);
+        final long compressedResponses = simulator.getCompressedResponses();
+        assertThat(connector.getArticles(articleIds).getArticles().size(), is(500));
+        assertThat(simulator.getCompressedResponses(), is(compressedResponses));
+    }
+
+    @Test
+    void sourceFanOutSearchesGroupsFittingOnePage() throws IOException, InfomediaConnectorException {
+        final String[] sourceCodes = {"pol", "ber", "jyl", "inf", "kri", "bt", "eb", "fyn", "nord", "sj", "vest", "midt"};
+        final Set<String> sources = new LinkedHashSet<>(Arrays.asList(sourceCodes));
+        connect(new InfomediaSimulator()
+                .withCorpus(1200, THE_DATE, Duration.ofDays(1), sourceCodes)
+                .withRandomOrdering(true));
+        connector.setPageSize(300);
+        final SourceVolumes sourceVolumes = new SourceVolumes();
+        connector.setSourceVolumes(sourceVolumes);
+
+        // Unknown volumes: the single group is split until every part fits in a page
+        assertThat(connector.searchArticleIdsByPublishDate(THE_DATE, ONE_DAY, sources).size(), is(1200));
+        assertThat(sourceVolumes.getExpectedArticles("pol", ONE_DAY) > 90
+                && sourceVolumes.getExpectedArticles("pol", ONE_DAY) < 110, is(true));
+
+        // Learned volumes: groups of two sources fill 200 of the 225 hits allowed per group
+        final long searches = simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_SEARCH);
+        assertThat(connector.searchArticleIdsByPublishDate(THE_DATE, ONE_DAY, sources).size(), is(1200));
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_SEARCH) - searches, is(6L));
+
+        assertThat(connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY, sources).size(), is(1200));
+    }
+
+    @Test
+    void asyncSearchesWithConcurrentPagingDoNotStarveTheDefaultPool() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(400, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withLatency(Duration.ofMillis(5), Duration.ZERO));
+        connector.setPageSize(50);
+        connector.setPagingConcurrency(4);
+
+        // Twice as many searches as the default pool has threads, each with pages left to search
+        final List<CompletableFuture<Set<String>>> searches = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            searches.add(connector.searchArticleIdsByPublishDateAsync(THE_DATE, ONE_DAY, SOURCES));
+        }
+        for (CompletableFuture<Set<String>> search : searches) {
+            assertThat(search.get(30, TimeUnit.SECONDS).size(), is(400));
+        }
+    }
+
+    @Test
+    void asyncFetchesWithConcurrentBatchesDoNotStarveTheDefaultPool() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(100, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withLatency(Duration.ofMillis(5), Duration.ZERO));
+        final Set<String> articleIds = connector.searchArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES);
+        connector.setFetchBatchSize(10);
+        connector.setFetchConcurrency(4);
+
+        // Twice as many fetches as the default pool has threads, each of several batches
+        final List<CompletableFuture<ArticleList>> fetches = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            fetches.add(connector.getArticlesAsync(articleIds));
+        }
+        for (CompletableFuture<ArticleList> fetch : fetches) {
+            assertThat(fetch.get(30, TimeUnit.SECONDS).getArticles().size(), is(100));
+        }
+    }
+
+    @Test
+    void concurrentHarvestsDoNotStarveTheDefaultPool() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(400, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withLatency(Duration.ofMillis(5), Duration.ZERO));
+        connector.setPageSize(50);
+        connector.setPagingConcurrency(4);
+        connector.setPipelineCapacity(2);
+
+        // Twice as many harvests as the default pool has threads, each searching pages ahead
+        final List<CompletableFuture<Integer>> harvests = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            final CompletableFuture<Integer> harvest = new CompletableFuture<>();
+            final Thread caller = new Thread(() -> {
+                try {
+                    final AtomicLong harvested = new AtomicLong();
+                    connector.harvestArticlesByPublishDate(THE_DATE, ONE_DAY, SOURCES,
+                            article -> harvested.incrementAndGet());
+                    harvest.complete((int) harvested.get());
+                } catch (InfomediaConnectorException | RuntimeException e) {
+                    harvest.completeExceptionally(e);
+                }
+            });
+            caller.setDaemon(true);
+            caller.start();
+            harvests.add(harvest);
+        }
+        for (CompletableFuture<Integer> harvest : harvests) {
+            assertThat(harvest.get(30, TimeUnit.SECONDS), is(400));
+        }
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void virtualThreadsRunBulkOperations() throws Exception {
+        connectForBulkOperations(new InfomediaSimulator()
+                .withCorpus(1000, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withLatency(Duration.ofMillis(5), Duration.ZERO));
+        connector.setVirtualThreads(true);
+        assertThat(connector.isVirtualThreads(), is(true));
+        final Method isVirtual = Thread.class.getMethod("isVirtual");
+        assertThat(CompletableFuture.supplyAsync(() -> {
+            try {
+                return isVirtual.invoke(Thread.currentThread());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }, connector.getExecutor()).get(10, TimeUnit.SECONDS), is(true));
+
+        final Set<String> articleIds = connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES);
+        assertThat(connector.getArticlesAsync(articleIds).get(10, TimeUnit.SECONDS).getArticles().size(),
+                is(1000));
+
+        connector.setVirtualThreads(false);
+        assertThat(connector.isVirtualThreads(), is(false));
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    void virtualThreadsFallBackToPlatformThreadsBeforeJava21() throws IOException, InfomediaConnectorException {
+        connectForBulkOperations(new InfomediaSimulator()
+                .withCorpus(1000, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withLatency(Duration.ofMillis(5), Duration.ZERO));
+        final Executor platformExecutor = connector.getExecutor();
+        connector.setVirtualThreads(true);
+        assertThat(connector.isVirtualThreads(), is(false));
+        assertThat(connector.getExecutor() == platformExecutor, is(true));
+
+        final Set<String> articleIds = connector.searchAllArticleIdsByPublishDate(THE_DATE, ONE_DAY, SOURCES);
+        assertThat(connector.getArticles(articleIds).getArticles().size(), is(1000));
+    }
+
+    @Test
+    void publisherSearchesAndFetchesOnDemand() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(1000, THE_DATE, Duration.ofDays(1), "pol", "ber")
+                .withRandomOrdering(true));
+        connector.setPageSize(100);
+        final Set<String> received = ConcurrentHashMap.newKeySet();
+        final AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        final Semaphore delivered = new Semaphore(0);
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+        connector.publishArticlesByPublishDate(THE_DATE, ONE_DAY, SOURCES).subscribe(new Flow.Subscriber<Article>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+            }
+
+            @Override
+            public void onNext(Article article) {
+                received.add(article.getArticleId());
+                delivered.release();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_SEARCH), is(0L));
+
+        subscription.get().request(5);
+        assertThat(delivered.tryAcquire(5, 10, TimeUnit.SECONDS), is(true));
+        // The day is halved four times to the first interval fitting in a page, which is fetched in a single
+        // batch. Later intervals wait for demand, and articles of the batch beyond it are delivered without
+        // fetching again.
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_SEARCH), is(5L));
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_FETCH), is(1L));
+        subscription.get().request(1);
+        assertThat(delivered.tryAcquire(1, 10, TimeUnit.SECONDS), is(true));
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_SEARCH), is(5L));
+        assertThat(simulator.getRequestCount(InfomediaConnector.URL_INFOMEDIA_FETCH), is(1L));
+
+        subscription.get().request(Long.MAX_VALUE);
+        completed.get(10, TimeUnit.SECONDS);
+        assertThat(received.size(), is(1000));
+    }
+
+    @Test
+    void publisherSignalsNothingBeforeOnSubscribeHasReturned() throws Exception {
+        connect(new InfomediaSimulator()
+                .withCorpus(100, THE_DATE, Duration.ofDays(1), "pol", "ber"));
+        final CountDownLatch nextSignalled = new CountDownLatch(1);
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final CompletableFuture<Void> completed = new CompletableFuture<>();
+        connector.publishArticlesByPublishDate(THE_DATE, ONE_DAY, SOURCES).subscribe(new Flow.Subscriber<Article>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                s.request(Long.MAX_VALUE);
+                try {
+                    // Long enough for the search and fetch to complete had they been signalled
+                    overlapped.set(nextSignalled.await(2, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onNext(Article article) {
+                nextSignalled.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                completed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed.complete(null);
+            }
+        });
+        completed.get(10, TimeUnit.SECONDS);
+        assertThat(nextSignalled.getCount(), is(0L));
+        assertThat(overlapped.get(), is(false));
+    }
+
+    /**
+     * Starts the simulator and connects to it, both closed after the test
+     */
+    private void connect(InfomediaSimulator configured) throws IOException {
+        simulator = configured.start();
+        connector = InfomediaConnectorFactory.create(simulator.getBaseUrl(), "username", "password");
+    }
+
+    private void connectForBulkOperations(InfomediaSimulator configured) throws IOException {
+        connect(configured);
+        connector.setPageSize(100);
+        connector.setPagingConcurrency(8);
+        connector.setFetchBatchSize(50);
+        connector.setFetchConcurrency(16);
+    }
+}
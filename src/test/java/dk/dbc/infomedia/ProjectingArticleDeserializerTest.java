@@ -0,0 +1,66 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ProjectingArticleDeserializerTest {
+    private static final String FETCH_PAYLOAD = "/__files/body-api-v1-article-fetch-UMIvb.json";
+
+    @Test
+    void allFieldsReadLikeArticles() throws IOException {
+        final ArticleList articles = read(ArticleStreamReader.OBJECT_MAPPER);
+        final ArticleList projected = read(
+                ProjectingArticleDeserializer.objectMapper(EnumSet.allOf(ArticleField.class), false));
+
+        assertThat(ArticleStreamReader.OBJECT_MAPPER.valueToTree(projected),
+                is(ArticleStreamReader.OBJECT_MAPPER.valueToTree(articles)));
+    }
+
+    @Test
+    void onlySelectedFieldsAreRead() throws IOException {
+        final List<Article> articles = read(ArticleStreamReader.OBJECT_MAPPER).getArticles();
+        final ArticleList projected = read(ProjectingArticleDeserializer.objectMapper(
+                EnumSet.of(ArticleField.HEADING, ArticleField.AUTHORS, ArticleField.SECTION), true));
+
+        assertThat(projected.getArticles().size(), is(articles.size()));
+        assertThat(projected.getArticleUsage() != null, is(true));
+        for (int i = 0; i < articles.size(); i++) {
+            final Article article = projected.getArticles().get(i);
+            assertThat(article instanceof CompactArticle, is(true));
+            assertThat(article.getArticleId(), is(articles.get(i).getArticleId()));
+            assertThat(article.getHeading(), is(articles.get(i).getHeading()));
+            assertThat(article.getAuthors(), is(articles.get(i).getAuthors()));
+            assertThat(article.getSection() == null, is(articles.get(i).getSection() == null));
+            assertThat(article.getBodyText(), is(nullValue()));
+            assertThat(article.getPublishDate(), is(nullValue()));
+            assertThat(article.getWordCount(), is(nullValue()));
+        }
+    }
+
+    @Test
+    void mappersAreShared() {
+        assertThat(ProjectingArticleDeserializer.objectMapper(EnumSet.of(ArticleField.HEADING), false),
+                sameInstance(ProjectingArticleDeserializer.objectMapper(EnumSet.of(ArticleField.HEADING), false)));
+    }
+
+    private static ArticleList read(ObjectMapper objectMapper) throws IOException {
+        try (InputStream inputStream = ProjectingArticleDeserializerTest.class.getResourceAsStream(FETCH_PAYLOAD)) {
+            return objectMapper.readValue(inputStream, ArticleList.class);
+        }
+    }
+}
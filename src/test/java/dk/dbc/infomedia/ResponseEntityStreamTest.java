@@ -0,0 +1,80 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResponseEntityStreamTest {
+    private static final byte[] ENTITY = ("{\"Articles\":[" + "{\"BodyText\":\"infomedia artikel avis\"},".repeat(200)
+            + "{}]}").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void identity() throws IOException {
+        final ResponseEntityStream entity = ResponseEntityStream.of(new ByteArrayInputStream(ENTITY), null);
+        assertThat(entity.readAllBytes(), is(ENTITY));
+        assertThat(entity.isEncoded(), is(false));
+        assertThat(entity.getEncodedBytes(), is((long) ENTITY.length));
+        assertThat(entity.getDecodedBytes(), is((long) ENTITY.length));
+    }
+
+    @Test
+    void gzip() throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new GZIPOutputStream(compressed)) {
+            outputStream.write(ENTITY);
+        }
+        assertDecoded(compressed.toByteArray(), "gzip");
+    }
+
+    @Test
+    void deflate() throws IOException {
+        assertDecoded(deflate(false), "deflate");
+    }
+
+    @Test
+    void rawDeflate() throws IOException {
+        assertDecoded(deflate(true), "Deflate");
+    }
+
+    @Test
+    void unsupportedEncoding() {
+        assertThrows(IOException.class,
+                () -> ResponseEntityStream.of(new ByteArrayInputStream(ENTITY), "br"));
+    }
+
+    private static void assertDecoded(byte[] compressed, String contentEncoding) throws IOException {
+        try (ResponseEntityStream entity = ResponseEntityStream.of(new ByteArrayInputStream(compressed), contentEncoding)) {
+            assertThat(entity.readAllBytes(), is(ENTITY));
+            assertThat(entity.isEncoded(), is(true));
+            assertThat(entity.getEncodedBytes(), is((long) compressed.length));
+            assertThat(entity.getDecodedBytes(), is((long) ENTITY.length));
+        }
+    }
+
+    private static byte[] deflate(boolean raw) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (OutputStream outputStream = new DeflaterOutputStream(compressed, deflater)) {
+            outputStream.write(ENTITY);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+}
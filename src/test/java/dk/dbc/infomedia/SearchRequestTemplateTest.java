@@ -0,0 +1,51 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class SearchRequestTemplateTest {
+    private static final Instant PUBLISH_DATE = Instant.parse("2019-01-13T00:00:00Z");
+    private static final Duration PUBLISH_DURATION = Duration.ofHours(23).plusMinutes(59).plusSeconds(59);
+
+    @Test
+    void pageMatchesSerializedSearchRequest() throws IOException {
+        final Set<String> sources = new LinkedHashSet<>(Arrays.asList("bma", "pol"));
+        final SearchRequestTemplate template = new SearchRequestTemplate(PUBLISH_DATE, PUBLISH_DURATION, sources, 300);
+
+        final ArticleSearchRequest request = new ArticleSearchRequest();
+        request.setIqlQuery("sourcecode:[bma,pol] AND publishdate:[2019-01-13T00:00:00Z..2019-01-13T23:59:59Z]");
+        request.setSearchRange(new SearchRange(PUBLISH_DATE, PUBLISH_DATE.plus(PUBLISH_DURATION)));
+        request.setPagingParameter(new PagingParameter(600, 300));
+
+        assertThat(write(template, 600), is(ArticleStreamReader.OBJECT_MAPPER.valueToTree(request)));
+    }
+
+    @Test
+    void articleIdsAreEscaped() throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        InfomediaConnector.fetchBody(Arrays.asList("e70a7343", "quote\"d")).write(outputStream);
+        assertThat(outputStream.toString("UTF-8"), is("[\"e70a7343\",\"quote\\\"d\"]"));
+    }
+
+    private static JsonNode write(SearchRequestTemplate template, int startIndex) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        template.page(startIndex).write(outputStream);
+        return ArticleStreamReader.OBJECT_MAPPER.readTree(outputStream.toByteArray());
+    }
+}
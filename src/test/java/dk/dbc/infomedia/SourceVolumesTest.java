@@ -0,0 +1,71 @@
+/*
+ * Copyright Dansk Bibliotekscenter a/s. Licensed under GPLv3
+ * See license text in LICENSE.txt or at https://opensource.dbc.dk/licenses/gpl-3.0/
+ */
+
+package dk.dbc.infomedia;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SourceVolumesTest {
+    private static final Duration ONE_DAY = Duration.ofDays(1);
+
+    @Test
+    void groupsFillThreeQuartersOfAPage() {
+        final SourceVolumes sourceVolumes = new SourceVolumes();
+        sourceVolumes.setVolume("pol", 200, ONE_DAY);
+        sourceVolumes.setVolume("ber", 100, ONE_DAY);
+        sourceVolumes.setVolume("jyl", 60, ONE_DAY);
+        sourceVolumes.setVolume("inf", 20, ONE_DAY);
+        sourceVolumes.setVolume("bt", 500, ONE_DAY);
+
+        final List<Set<String>> groups = sourceVolumes.group(sources("pol", "ber", "jyl", "inf", "bt", "new"),
+                ONE_DAY, 300);
+        assertThat(groups.size(), is(4));
+        assertThat(groups.get(0), containsInAnyOrder("new"));
+        assertThat(groups.get(1), containsInAnyOrder("bt"));
+        assertThat(groups.get(2), containsInAnyOrder("pol", "inf"));
+        assertThat(groups.get(3), containsInAnyOrder("ber", "jyl"));
+    }
+
+    @Test
+    void expectedArticlesScaleWithDuration() {
+        final SourceVolumes sourceVolumes = new SourceVolumes();
+        sourceVolumes.setVolume("pol", 240, ONE_DAY);
+        assertThat(Math.round(sourceVolumes.getExpectedArticles("pol", Duration.ofHours(1))), is(10L));
+        assertThat(sourceVolumes.getExpectedArticles("ber", Duration.ofHours(1)), is(-1.0));
+        assertThrows(IllegalArgumentException.class, () -> sourceVolumes.setVolume("pol", -1, ONE_DAY));
+    }
+
+    @Test
+    void observationsAreLearned() {
+        final SourceVolumes sourceVolumes = new SourceVolumes();
+        sourceVolumes.observe(sources("pol", "ber"), ONE_DAY, 200);
+        assertThat(Math.round(sourceVolumes.getExpectedArticles("pol", ONE_DAY)), is(100L));
+        assertThat(Math.round(sourceVolumes.getExpectedArticles("ber", ONE_DAY)), is(100L));
+
+        sourceVolumes.observe(Collections.singleton("pol"), ONE_DAY, 140);
+        assertThat(Math.round(sourceVolumes.getExpectedArticles("pol", ONE_DAY)), is(120L));
+
+        // Group observations scale the members by how far off their expected sum was
+        sourceVolumes.observe(sources("pol", "ber"), ONE_DAY, 440);
+        assertThat(Math.round(sourceVolumes.getExpectedArticles("pol", ONE_DAY)), is(180L));
+        assertThat(Math.round(sourceVolumes.getExpectedArticles("ber", ONE_DAY)), is(150L));
+    }
+
+    private static Set<String> sources(String... sources) {
+        return new LinkedHashSet<>(Arrays.asList(sources));
+    }
+}